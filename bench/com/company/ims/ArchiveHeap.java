@@ -0,0 +1,86 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Heap held by the store as order history grows, with every finished order left on the heap versus archived.
+public class ArchiveHeap {
+    private static final int SKUS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%10s %14s %14s %12s %12s%n", "orders", "heap (all)", "heap (arch.)", "B/order", "B/order arch");
+        for (int n = max / 4; n <= max; n *= 2) run(n);
+    }
+
+    private static void run(int orders) throws Exception {
+        Path dir = Files.createTempDirectory("ims-archive-bench");
+        try {
+            long base;
+            long all;
+            long archived;
+            try (Store store = Store.open(dir, FsyncPolicy.NEVER, 50, 0)) {
+                base = usedHeap();
+                for (int i = 0; i < SKUS; i++) {
+                    store.addProduct(new Product("AR-" + i, "Item " + i, new BigDecimal("4.99"), Integer.MAX_VALUE / 2, 0));
+                }
+                fill(store, orders);
+                all = usedHeap() - base;
+
+                store.setArchivePolicy(ArchivePolicy.byCount(0));
+                store.archiveOrders();
+                archived = usedHeap() - base;
+
+                // Reading back through the archive still works.
+                long sampled = store.findOrder(1000 + orders / 2).map(o -> o.getId()).orElse(-1L);
+                if (sampled < 0) throw new IllegalStateException("Archived order not found");
+            }
+            System.out.printf("%,10d %,11d KB %,11d KB %,12d %,12d%n", orders, all >> 10, archived >> 10,
+                    all / orders, archived / orders);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // Nine in ten orders end up finished (DELIVERED or CANCELLED), the rest stay PLACED.
+    private static void fill(Store store, int count) {
+        Random rnd = new Random(count);
+        List<CartRequest> batch = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            Map<String, Integer> cart = new HashMap<>();
+            int lines = 1 + rnd.nextInt(3);
+            for (int l = 0; l < lines; l++) cart.merge("AR-" + rnd.nextInt(SKUS), 1 + rnd.nextInt(2), Integer::sum);
+            batch.add(new CartRequest("user" + rnd.nextInt(10_000), cart));
+            if (batch.size() == 1000 || n == count - 1) {
+                for (OrderResult r : store.placeOrders(batch)) {
+                    long id = r.getOrder().getId();
+                    int k = (int) (id % 10);
+                    if (k == 0) continue;
+                    if (k < 4) {
+                        store.updateOrderStatusAsAdmin(id, OrderStatus.CANCELLED);
+                    } else {
+                        for (OrderStatus s : List.of(OrderStatus.PAID, OrderStatus.PACKED, OrderStatus.SHIPPED, OrderStatus.DELIVERED))
+                            store.updateOrderStatusAsAdmin(id, s);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(p);
+        }
+    }
+}
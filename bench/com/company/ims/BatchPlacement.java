@@ -0,0 +1,84 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+public class BatchPlacement {
+    private static final int SKUS = 1024;
+    private static final int[] BATCH_SIZES = {1, 10, 100, 1000};
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+        run(null, threads, 0, millis / 2);
+        System.out.printf("%d threads, %d ms per run, 3-line carts%n", threads, millis);
+        System.out.printf("%-10s %-12s %14s%n", "journal", "path", "orders/s");
+        for (FsyncPolicy policy : new FsyncPolicy[] {null, FsyncPolicy.ALWAYS}) {
+            String label = policy == null ? "in-memory" : policy.toString();
+            System.out.printf("%-10s %-12s %,14.0f%n", label, "placeOrder", run(policy, threads, 0, millis));
+            for (int size : BATCH_SIZES) {
+                System.out.printf("%-10s %-12s %,14.0f%n", label, "batch " + size, run(policy, threads, size, millis));
+            }
+        }
+    }
+
+    // batchSize 0 means one placeOrder call per cart.
+    private static double run(FsyncPolicy policy, int threads, int batchSize, long millis) throws Exception {
+        Path dir = policy == null ? null : Files.createTempDirectory("ims-batch-bench");
+        try (Store store = policy == null ? new Store() : Store.open(dir, policy)) {
+            for (int i = 0; i < SKUS; i++) {
+                store.addProduct(new Product("B-" + i, "Item " + i, new BigDecimal("9.99"), Integer.MAX_VALUE / 2, 0));
+            }
+
+            LongAdder orders = new LongAdder();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                futures.add(pool.submit(() -> {
+                    Random rnd = new Random(id);
+                    while (System.nanoTime() < deadline) {
+                        if (batchSize == 0) {
+                            store.placeOrder("user" + id, cart(rnd));
+                            orders.increment();
+                            continue;
+                        }
+                        List<CartRequest> batch = new ArrayList<>(batchSize);
+                        for (int b = 0; b < batchSize; b++) batch.add(new CartRequest("user" + id, cart(rnd)));
+                        for (OrderResult r : store.placeOrders(batch)) {
+                            if (!r.isSuccess()) throw new IllegalStateException(r.getError());
+                        }
+                        orders.add(batchSize);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            pool.shutdown();
+            return orders.sum() * 1000.0 / millis;
+        } finally {
+            if (dir != null) deleteRecursively(dir);
+        }
+    }
+
+    private static Map<String, Integer> cart(Random rnd) {
+        Map<String, Integer> cart = new HashMap<>();
+        for (int l = 0; l < 3; l++) cart.merge("B-" + rnd.nextInt(SKUS), 1, Integer::sum);
+        return cart;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+}
@@ -0,0 +1,110 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Repricing a whole catalog: one updateProduct call per SKU against one updateProducts batch on fork-join pools of
+// 1 up to every core. A second run flips a block of SKUs between two prices over and over while shoppers place
+// orders spanning several of them and reports are opened, and counts orders and reports that saw both prices.
+public class BulkReprice {
+    private static final BigDecimal LOW = new BigDecimal("1.00");
+    private static final BigDecimal HIGH = new BigDecimal("2.00");
+
+    public static void main(String[] args) throws Exception {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Store store = new Store(false);
+        List<ProductUpdate> load = new ArrayList<>(skus);
+        for (int i = 0; i < skus; i++) {
+            store.addProduct(new Product("BR-" + i, "Item " + i, LOW, 1_000, 10));
+            load.add(ProductUpdate.price("BR-" + i, HIGH));
+        }
+        System.out.printf("%,d SKUs, %d cores%n", skus, cores);
+        System.out.printf("%-24s %10s %14s%n", "how", "ms", "SKUs/s");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < skus; i++) store.updateProduct("BR-" + i, null, LOW, null);
+        report("updateProduct each", skus, start);
+
+        List<Integer> pools = new ArrayList<>();
+        for (int p = 1; p < cores; p <<= 1) pools.add(p);
+        pools.add(cores);
+        for (int round = 0; round < 2; round++) {
+            for (int parallelism : pools) {
+                BigDecimal price = round % 2 == 0 ? HIGH : LOW;
+                List<ProductUpdate> batch = new ArrayList<>(skus);
+                for (int i = 0; i < skus; i++) batch.add(ProductUpdate.price("BR-" + i, price));
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                start = System.nanoTime();
+                ImportResult r = pool.submit(() -> store.updateProducts(batch)).get();
+                // The first round warms up; the second one is reported.
+                if (round == 1) report("updateProducts x" + parallelism, skus, start);
+                pool.shutdown();
+                if (r.getRejected() != 0) throw new AssertionError(r.getErrors());
+            }
+        }
+        store.close();
+
+        mixes(Math.max(2, cores), 2_000);
+    }
+
+    private static void report(String how, int skus, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-24s %,10.0f %,14.0f%n", how, seconds * 1000, skus / seconds);
+    }
+
+    // Flips block SKUs between LOW and HIGH in batches while shoppers order four of them at a time.
+    private static void mixes(int shoppers, int block) throws Exception {
+        Store store = new Store(false);
+        for (int i = 0; i < block; i++) store.addProduct(new Product("MX-" + i, "Item " + i, LOW, Integer.MAX_VALUE / 2, 0));
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder orders = new LongAdder();
+        LongAdder mixedOrders = new LongAdder();
+        LongAdder reports = new LongAdder();
+        LongAdder mixedReports = new LongAdder();
+        ExecutorService pool = Executors.newFixedThreadPool(shoppers + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < shoppers; t++) {
+            int id = t;
+            futures.add(pool.submit(() -> {
+                Random rnd = new Random(id);
+                while (!stop.get()) {
+                    Map<String, Integer> cart = new HashMap<>();
+                    while (cart.size() < 4) cart.put("MX-" + rnd.nextInt(block), 1);
+                    Order o = store.placeOrder("shopper" + id, cart);
+                    if (o.getItems().stream().map(OrderItem::getUnitPrice).distinct().count() > 1) mixedOrders.increment();
+                    orders.increment();
+                }
+                return null;
+            }));
+        }
+        futures.add(pool.submit(() -> {
+            while (!stop.get()) {
+                try (StoreView view = store.snapshot()) {
+                    if (view.streamProducts().map(Product::getPrice).distinct().count() > 1) mixedReports.increment();
+                }
+                reports.increment();
+            }
+            return null;
+        }));
+
+        int flips = 200;
+        for (int f = 0; f < flips; f++) {
+            BigDecimal price = f % 2 == 0 ? HIGH : LOW;
+            List<ProductUpdate> batch = new ArrayList<>(block);
+            for (int i = 0; i < block; i++) batch.add(ProductUpdate.price("MX-" + i, price));
+            store.updateProducts(batch);
+        }
+        stop.set(true);
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        store.close();
+        System.out.printf("%n%d repricings of %,d SKUs: %,d orders (%d mixed), %,d reports (%d mixed)%n",
+                flips, block, orders.sum(), mixedOrders.sum(), reports.sum(), mixedReports.sum());
+        if (mixedOrders.sum() + mixedReports.sum() > 0) throw new AssertionError("Saw a half-published batch");
+    }
+}
@@ -0,0 +1,69 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// A warehouse wave done two ways: finding the orders at a status by scanning every order and moving them one
+// updateOrderStatusAsAdmin call at a time, against one transitionOrders call on the status index. Runs a pay wave and
+// a cancel wave, in memory and with a journal that fsyncs every commit.
+public class BulkTransition {
+    private static final int SKUS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        System.out.printf("%,d orders per wave%n", orders);
+        System.out.printf("%-10s %-22s %14s %14s%n", "journal", "wave", "one by one ms", "bulk ms");
+        for (FsyncPolicy policy : new FsyncPolicy[] { null, FsyncPolicy.ALWAYS }) {
+            String journal = policy == null ? "in-memory" : policy.name();
+            long[] pay = { wave(policy, orders, OrderStatus.PLACED, OrderStatus.PAID, false),
+                    wave(policy, orders, OrderStatus.PLACED, OrderStatus.PAID, true) };
+            System.out.printf("%-10s %-22s %,14d %,14d%n", journal, "PLACED -> PAID", pay[0], pay[1]);
+            long[] cancel = { wave(policy, orders, OrderStatus.PAID, OrderStatus.CANCELLED, false),
+                    wave(policy, orders, OrderStatus.PAID, OrderStatus.CANCELLED, true) };
+            System.out.printf("%-10s %-22s %,14d %,14d%n", journal, "PAID -> CANCELLED", cancel[0], cancel[1]);
+        }
+    }
+
+    // Milliseconds to move orders orders from status to next.
+    private static long wave(FsyncPolicy policy, int orders, OrderStatus status, OrderStatus next, boolean bulk)
+            throws Exception {
+        Path dir = policy == null ? null : Files.createTempDirectory("ims-bulk");
+        Store store = dir == null ? new Store(false) : Store.open(dir, policy);
+        try {
+            for (int i = 0; i < SKUS; i++) {
+                store.addProduct(new Product("BT-" + i, "Item " + i, new BigDecimal("4.50"), Integer.MAX_VALUE / 2, 0));
+            }
+            List<CartRequest> carts = new ArrayList<>();
+            Random rnd = new Random(1);
+            for (int i = 0; i < orders; i++) {
+                carts.add(new CartRequest("user" + i % 50, Map.of("BT-" + rnd.nextInt(SKUS), 1 + rnd.nextInt(3))));
+                if (carts.size() == 1_000) {
+                    store.placeOrders(carts);
+                    carts.clear();
+                }
+            }
+            if (!carts.isEmpty()) store.placeOrders(carts);
+            if (status == OrderStatus.PAID) store.transitionOrders(OrderStatus.PLACED, null, null, null, OrderStatus.PAID);
+
+            long start = System.nanoTime();
+            int moved = 0;
+            if (bulk) {
+                moved = store.transitionOrders(status, null, null, null, next).getMoved();
+            } else {
+                for (Order o : store.listAllOrders()) {
+                    if (o.getStatus() != status) continue;
+                    store.updateOrderStatusAsAdmin(o.getId(), next);
+                    moved++;
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (moved != orders) throw new AssertionError("Moved " + moved + " of " + orders);
+            return millis;
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.company.ims;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CatalogImport {
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        Path csv = Files.createTempFile("ims-import-bench", ".csv");
+        try {
+            write(csv, rows);
+            System.out.printf("%,d rows, %,d MB%n", rows, Files.size(csv) >> 20);
+            run(csv, maxThreads);
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                long t0 = System.nanoTime();
+                ImportResult r = run(csv, threads);
+                long ms = (System.nanoTime() - t0) / 1_000_000;
+                System.out.printf("%2d threads: %,6d ms  %,10.0f rows/s  (%,d added)%n",
+                        threads, ms, rows * 1000.0 / Math.max(1, ms), r.getInserted());
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    private static ImportResult run(Path csv, int threads) throws IOException {
+        try (Store store = new Store(); FileChannel ch = FileChannel.open(csv)) {
+            return CatalogCsv.importProducts(store, ch, false, threads);
+        }
+    }
+
+    private static void write(Path csv, int rows) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(csv)) {
+            w.write(CatalogCsv.PRODUCT_HEADER);
+            w.newLine();
+            for (int i = 0; i < rows; i++) {
+                w.write("IMP-" + i + ",\"Item " + i + ", boxed\"," + (i % 10_000) + ".99," + (i % 500) + ",10");
+                w.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Order placement rate with 0 to 4 subscribers reading the store's event bus, for each wait strategy, and how far
+// the subscribers kept up: events read, events lost to overruns, and the average batch they read per wake-up. A
+// second table publishes straight to a bus with no store behind it, to show the ring's own cost.
+public class EventBusThroughput {
+    private static final int SKUS = 10_000;
+    private static final int[] SUBSCRIBERS = {0, 1, 2, 4};
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        StoreEventBus.WaitStrategy[] strategies = args.length > 2
+                ? new StoreEventBus.WaitStrategy[] { StoreEventBus.WaitStrategy.valueOf(args[2]) }
+                : StoreEventBus.WaitStrategy.values();
+
+        runStore(threads, 2, StoreEventBus.WaitStrategy.SLEEPING, millis / 2);
+        System.out.printf("%d writer threads, 3-line carts, %d ms per run%n", threads, millis);
+        System.out.printf("%-10s %-5s %14s %14s %12s %10s%n", "wait", "subs", "orders/s", "events read/s", "lost", "avg batch");
+        for (StoreEventBus.WaitStrategy wait : strategies) {
+            for (int subs : SUBSCRIBERS) {
+                Result r = runStore(threads, subs, wait, millis);
+                System.out.printf("%-10s %-5d %,14.0f %,14.0f %,12d %,10.1f%n",
+                        wait, subs, r.opsPerSecond, r.readPerSecond, r.lost, r.avgBatch);
+            }
+        }
+
+        System.out.printf("%nraw bus, %d writer threads publishing one stock event each%n", threads);
+        System.out.printf("%-10s %-5s %14s %14s %12s %10s%n", "wait", "subs", "events/s", "events read/s", "lost", "avg batch");
+        for (StoreEventBus.WaitStrategy wait : strategies) {
+            for (int subs : SUBSCRIBERS) {
+                Result r = runBus(threads, subs, wait, millis);
+                System.out.printf("%-10s %-5d %,14.0f %,14.0f %,12d %,10.1f%n",
+                        wait, subs, r.opsPerSecond, r.readPerSecond, r.lost, r.avgBatch);
+            }
+        }
+    }
+
+    private static final class Result {
+        double opsPerSecond;
+        double readPerSecond;
+        long lost;
+        double avgBatch;
+    }
+
+    // Counts what it reads and checks that sequences only ever go up by one, apart from reported overruns.
+    private static final class Counter implements StoreEventHandler {
+        long read;
+        long batches;
+        long lost;
+        long expected = -1;
+        StoreEventBus.Subscription subscription;
+
+        @Override
+        public void onEvent(StoreEvent event, long sequence, boolean endOfBatch) {
+            if (expected >= 0 && sequence != expected) throw new AssertionError("Expected " + expected + ", got " + sequence);
+            expected = sequence + 1;
+            read++;
+            if (endOfBatch) batches++;
+        }
+
+        @Override
+        public void onOverrun(long from, long to) {
+            if (expected >= 0 && from != expected) throw new AssertionError("Overrun from " + from + ", expected " + expected);
+            expected = to;
+            lost += to - from;
+        }
+    }
+
+    private static Result runStore(int threads, int subscribers, StoreEventBus.WaitStrategy wait, long millis) throws Exception {
+        Store store = new Store(false);
+        for (int i = 0; i < SKUS; i++) {
+            store.addProduct(new Product("EV-" + i, "Item " + i, new BigDecimal("9.99"), Integer.MAX_VALUE / 2, 0));
+        }
+        StoreEventBus bus = store.events();
+        List<Counter> counters = subscribe(bus, subscribers, wait);
+
+        LongAdder orders = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(pool.submit(() -> {
+                Random rnd = new Random(id);
+                while (System.nanoTime() < deadline) {
+                    Map<String, Integer> cart = new HashMap<>();
+                    for (int l = 0; l < 3; l++) cart.merge("EV-" + rnd.nextInt(SKUS), 1, Integer::sum);
+                    Order o = store.placeOrder("user" + id, cart);
+                    if (rnd.nextInt(4) == 0) store.cancelOrderAsCustomer("user" + id, o.getId());
+                    orders.increment();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        return finish(store, bus, counters, orders.sum(), start);
+    }
+
+    private static Result runBus(int threads, int subscribers, StoreEventBus.WaitStrategy wait, long millis) throws Exception {
+        StoreEventBus bus = new StoreEventBus(StoreEventBus.DEFAULT_CAPACITY);
+        List<Counter> counters = subscribe(bus, subscribers, wait);
+        List<Product> products = List.of(new Product("EV-0", "Item", new BigDecimal("1.00"), 0, 0));
+
+        LongAdder published = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                long[] words = new long[1];
+                long n = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 1000; i++) {
+                        words[0] = n++;
+                        bus.stockChanged(products, words, 1);
+                    }
+                    published.add(1000);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        return finish(null, bus, counters, published.sum(), start);
+    }
+
+    private static List<Counter> subscribe(StoreEventBus bus, int subscribers, StoreEventBus.WaitStrategy wait) {
+        List<Counter> counters = new ArrayList<>();
+        for (int s = 0; s < subscribers; s++) {
+            Counter c = new Counter();
+            counters.add(c);
+            c.subscription = bus.subscribe("bench-" + s, c, bus.getCursor(), wait);
+        }
+        return counters;
+    }
+
+    private static Result finish(Store store, StoreEventBus bus, List<Counter> counters, long ops, long start) throws Exception {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // Subscribers get up to a second to drain what is left in the ring before they are stopped.
+        long drainBy = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() < drainBy && counters.stream().anyMatch(c -> c.subscription.getLag() > 0)) Thread.sleep(1);
+        if (store != null) store.close();
+        else bus.close();
+
+        Result r = new Result();
+        r.opsPerSecond = ops / seconds;
+        long read = 0;
+        long batches = 0;
+        for (Counter c : counters) {
+            read += c.read;
+            batches += c.batches;
+            r.lost += c.lost;
+        }
+        r.readPerSecond = counters.isEmpty() ? 0 : read / counters.size() / seconds;
+        r.avgBatch = batches == 0 ? 0 : (double) read / batches;
+        return r;
+    }
+}
@@ -0,0 +1,93 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Checkout retry storms: every thread sends the same run of idempotency keys, so each key arrives once per thread at
+// about the same moment and one of them places the order. Reports calls per second against plain placeOrder calls,
+// and for replays of keys whose orders were all placed beforehand, and checks that each key made exactly one order
+// and took its stock once.
+public class IdempotentRetries {
+    private static final int SKUS = 1_000;
+    private static final int STOCK = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+
+        run(threads, keys, Mode.PLAIN);
+        System.out.printf("%d threads, %,d keys, %d calls per key%n", threads, keys, threads);
+        System.out.printf("%-12s %14s %10s %14s%n", "mode", "calls/s", "orders", "units taken");
+        for (Mode mode : Mode.values()) {
+            Result r = run(threads, keys, mode);
+            System.out.printf("%-12s %,14.0f %,10d %,14d%n", mode, r.callsPerSecond, r.orders, r.units);
+        }
+    }
+
+    private enum Mode {
+        // Each thread places its own order per key, without sending the key.
+        PLAIN,
+        // Every key is sent by all threads at once.
+        STORM,
+        // Every key was already placed once before timing starts.
+        REPLAY
+    }
+
+    private static final class Result {
+        double callsPerSecond;
+        long orders;
+        long units;
+    }
+
+    private static Result run(int threads, int keys, Mode mode) throws Exception {
+        Store store = new Store(false);
+        for (int i = 0; i < SKUS; i++) store.addProduct(new Product("IR-" + i, "Item " + i, new BigDecimal("2.00"), STOCK, 0));
+        boolean retries = mode != Mode.PLAIN;
+        if (mode == Mode.REPLAY) {
+            for (int k = 0; k < keys; k++) store.placeOrder("shopper", cart(k), "checkout-" + k);
+        }
+        LongAdder calls = new LongAdder();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(pool.submit(() -> {
+                for (int k = 0; k < keys; k++) {
+                    Map<String, Integer> cart = cart(k);
+                    Order o = retries
+                            ? store.placeOrder("shopper", cart, "checkout-" + k)
+                            : store.placeOrder("shopper" + id, cart);
+                    ids.add(o.getId());
+                    calls.increment();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Result r = new Result();
+        r.callsPerSecond = calls.sum() / seconds;
+        r.orders = ids.size();
+        for (Product p : store.listProducts(null, SKUS)) r.units += STOCK - p.getStock();
+        long expected = 0;
+        for (int k = 0; k < keys; k++) expected += 1 + k % 3;
+        if (!retries) expected *= threads;
+        long orders = retries ? keys : (long) keys * threads;
+        if (r.orders != orders || r.units != expected || store.listAllOrders().size() != orders) {
+            throw new AssertionError(r.orders + " orders and " + r.units + " units, expected " + orders + " and " + expected);
+        }
+        store.close();
+        return r;
+    }
+
+    // The same cart for a key on every thread, as a retry would send.
+    private static Map<String, Integer> cart(int k) {
+        return Map.of("IR-" + k % SKUS, 1 + k % 3);
+    }
+}
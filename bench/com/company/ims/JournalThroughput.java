@@ -0,0 +1,70 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class JournalThroughput {
+    private static final int SKUS = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 3000;
+
+        run(null, threads, millis / 2);
+        System.out.printf("%d writer threads, %d ms per policy%n", threads, millis);
+        System.out.printf("%-10s %14s%n", "in-memory", format(run(null, threads, millis)));
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            System.out.printf("%-10s %14s%n", policy, format(run(policy, threads, millis)));
+        }
+    }
+
+    private static String format(double ordersPerSec) {
+        return String.format("%,.0f orders/s", ordersPerSec);
+    }
+
+    private static double run(FsyncPolicy policy, int threads, long millis) throws Exception {
+        Path dir = Files.createTempDirectory("ims-journal-bench");
+        Path file = dir.resolve("store.journal");
+        try (Store store = policy == null ? new Store() : Store.open(file, policy)) {
+            for (int i = 0; i < SKUS; i++) {
+                store.addProduct(new Product("J-" + i, "Item " + i, new BigDecimal("9.99"), Integer.MAX_VALUE / 2, 0));
+            }
+
+            LongAdder orders = new LongAdder();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                futures.add(pool.submit(() -> {
+                    Random rnd = new Random(id);
+                    while (System.nanoTime() < deadline) {
+                        Map<String, Integer> cart = new HashMap<>();
+                        for (int l = 0; l < 3; l++) cart.merge("J-" + rnd.nextInt(SKUS), 1, Integer::sum);
+                        store.placeOrder("user" + id, cart);
+                        orders.increment();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            pool.shutdown();
+            return orders.sum() * 1000.0 / millis;
+        } finally {
+            deleteQuietly(file);
+            deleteQuietly(dir);
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives a whole Store with a traffic mix at a fixed arrival rate (open loop: requests are due on a schedule whether
+// or not earlier ones have finished) and reports throughput, latency percentiles and rejections per operation.
+// Latency runs from when a request was due, not from when a worker got to it, so falling behind shows up in the tail.
+//
+// Shoppers browse catalog pages, look up products, place orders with Zipf-skewed SKU popularity and cancel one of
+// the recently placed orders; admins move the oldest orders along PLACED -> PAID -> PACKED -> SHIPPED -> DELIVERED and restock
+// low-stock products. The seed fixes the catalog, the arrival times and every request's parameters, so two runs with
+// the same options send the same traffic; only outcomes that depend on thread timing can differ.
+//
+// Usage: LoadSimulator [--seed 42] [--rate 5000] [--seconds 10] [--warmup 2] [--threads 8] [--shoppers 10000]
+// [--skus 10000] [--stock 500] [--zipf 1.0] [--arrivals poisson|fixed] [--data <dir> [--fsync PERIODIC]]
+// [--mix browse=10,find=40,place=30,cancel=5,progress=13,restock=2]
+public class LoadSimulator {
+    private enum Op { BROWSE, FIND, PLACE, CANCEL, PROGRESS, RESTOCK }
+
+    private static final Op[] OPS = Op.values();
+    private static final Rejection[] REASONS = Rejection.values();
+    private static final OrderStatus[] LIFECYCLE = {
+            OrderStatus.PLACED, OrderStatus.PAID, OrderStatus.PACKED, OrderStatus.SHIPPED, OrderStatus.DELIVERED };
+    private static final int PAGE = 20;
+    private static final int RECENT = 1024;
+
+    private final Map<String, String> options;
+    private final long seed;
+    private final int rate;
+    private final int threads;
+    private final int shoppers;
+    private final int skus;
+    private final int[] weights = new int[OPS.length];
+    // Cumulative Zipf probabilities by popularity rank, and the SKU each rank maps to.
+    private final double[] zipfCdf;
+    private final int[] skuOfRank;
+    // The last RECENT order ids placed, so cancellations have something to cancel.
+    private final AtomicLongArray recent = new AtomicLongArray(RECENT);
+    private final AtomicLong placed = new AtomicLong();
+
+    private LoadSimulator(Map<String, String> options) {
+        this.options = options;
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        this.rate = positive("rate", 5000);
+        this.threads = positive("threads", Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+        this.shoppers = positive("shoppers", 10_000);
+        this.skus = positive("skus", 10_000);
+        parseMix(options.getOrDefault("mix", "browse=10,find=40,place=30,cancel=5,progress=13,restock=2"));
+
+        double s = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        if (s < 0) throw new IllegalArgumentException("--zipf must be >= 0");
+        zipfCdf = new double[skus];
+        double sum = 0;
+        for (int r = 0; r < skus; r++) zipfCdf[r] = sum += 1 / Math.pow(r + 1, s);
+        for (int r = 0; r < skus; r++) zipfCdf[r] /= sum;
+        // Popular SKUs are spread over the catalog rather than all sorting first.
+        skuOfRank = new int[skus];
+        for (int i = 0; i < skus; i++) skuOfRank[i] = i;
+        Random shuffle = new Random(seed);
+        for (int i = skus - 1; i > 0; i--) {
+            int j = shuffle.nextInt(i + 1);
+            int t = skuOfRank[i];
+            skuOfRank[i] = skuOfRank[j];
+            skuOfRank[j] = t;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) throw new IllegalArgumentException("Expected --option value at " + args[i]);
+            options.put(args[i].substring(2), args[++i]);
+        }
+        new LoadSimulator(options).run();
+    }
+
+    private void run() throws Exception {
+        int seconds = positive("seconds", 10);
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        String data = options.get("data");
+        Store store = data == null ? new Store(false)
+                : Store.open(Path.of(data), FsyncPolicy.valueOf(options.getOrDefault("fsync", "PERIODIC")));
+        int stock = positive("stock", 500);
+        Random setup = new Random(seed);
+        for (int i = 0; i < skus; i++) {
+            if (store.findProduct(sku(i)).isPresent()) continue;
+            BigDecimal price = BigDecimal.valueOf(100 + setup.nextInt(9900), 2);
+            store.addProduct(new Product(sku(i), "Product " + i, price, stock, stock / 10));
+        }
+
+        System.out.printf("seed=%d rate=%,d/s seconds=%d warmup=%d threads=%d shoppers=%,d skus=%,d stock=%d zipf=%s "
+                        + "arrivals=%s mix=%s journal=%s%n", seed, rate, seconds, warmup, threads, shoppers, skus, stock,
+                options.getOrDefault("zipf", "1.0"), options.getOrDefault("arrivals", "poisson"), mix(),
+                data == null ? "none" : options.getOrDefault("fsync", "PERIODIC"));
+        try {
+            // Warmup draws from its own stream so the measured traffic is the same whatever the warmup length.
+            if (warmup > 0) phase(store, new SplittableRandom(~seed), warmup);
+            Stats[] stats = phase(store, new SplittableRandom(seed), seconds);
+            report(stats, seconds);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder[] rejected = new LongAdder[REASONS.length];
+
+        Stats() {
+            for (int i = 0; i < rejected.length; i++) rejected[i] = new LongAdder();
+        }
+
+        long rejectedTotal() {
+            long n = 0;
+            for (LongAdder a : rejected) n += a.sum();
+            return n;
+        }
+    }
+
+    // Plans seconds * rate requests from plan, then has the workers run each at its due time.
+    private Stats[] phase(Store store, SplittableRandom plan, int seconds) throws Exception {
+        int n = Math.toIntExact((long) seconds * rate);
+        long[] due = new long[n];
+        long[] seeds = new long[n];
+        boolean poisson = !options.getOrDefault("arrivals", "poisson").equals("fixed");
+        double meanGap = 1e9 / rate;
+        double t = 0;
+        for (int i = 0; i < n; i++) {
+            t += poisson ? -Math.log(1 - plan.nextDouble()) * meanGap : meanGap;
+            due[i] = (long) t;
+            seeds[i] = plan.nextLong();
+        }
+
+        Stats[] stats = new Stats[OPS.length];
+        for (int i = 0; i < stats.length; i++) stats[i] = new Stats();
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            futures.add(pool.submit(() -> {
+                for (long i; (i = next.getAndIncrement()) < n; ) {
+                    long at = start + due[(int) i];
+                    for (long wait; (wait = at - System.nanoTime()) > 0; ) LockSupport.parkNanos(wait);
+                    execute(store, seeds[(int) i], at, stats);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        return stats;
+    }
+
+    private void execute(Store store, long opSeed, long due, Stats[] stats) {
+        SplittableRandom rnd = new SplittableRandom(opSeed);
+        Op op = pick(rnd.nextInt(totalWeight()));
+        Stats s = stats[op.ordinal()];
+        try {
+            switch (op) {
+                case BROWSE -> store.listProducts(sku(rnd.nextInt(skus)), PAGE);
+                case FIND -> store.findProduct(sku(popular(rnd)));
+                case PLACE -> place(store, rnd);
+                case CANCEL -> cancel(store, rnd);
+                case PROGRESS -> progress(store, rnd);
+                case RESTOCK -> restock(store);
+            }
+            s.latency.record(System.nanoTime() - due);
+            s.ok.increment();
+        } catch (RuntimeException ex) {
+            s.rejected[Rejection.of(ex).ordinal()].increment();
+        }
+    }
+
+    private void place(Store store, SplittableRandom rnd) {
+        Map<String, Integer> cart = new HashMap<>();
+        for (int l = 1 + rnd.nextInt(4); l > 0; l--) cart.merge(sku(popular(rnd)), 1 + rnd.nextInt(3), Integer::sum);
+        Order o = store.placeOrder(shopper(rnd.nextInt(shoppers)), cart);
+        recent.set((int) (placed.getAndIncrement() % RECENT), o.getId());
+    }
+
+    // The owner cancels one of the recent orders; it may already have moved past where a customer can cancel.
+    private void cancel(Store store, SplittableRandom rnd) {
+        long n = Math.min(placed.get(), RECENT);
+        if (n == 0) throw new IllegalArgumentException("Order not found");
+        Order o = store.findOrder(recent.get(rnd.nextInt((int) n))).orElseThrow(() -> new IllegalArgumentException("Order not found"));
+        store.cancelOrderAsCustomer(o.getCustomerUsername(), o.getId());
+    }
+
+    // Moves one of the oldest orders at a random lifecycle step on to the next one.
+    private void progress(Store store, SplittableRandom rnd) {
+        int step = rnd.nextInt(LIFECYCLE.length - 1);
+        List<Order> oldest = store.listOrdersByStatus(LIFECYCLE[step], null, null, 8);
+        if (oldest.isEmpty()) throw new IllegalArgumentException("Order not found");
+        store.updateOrderStatusAsAdmin(oldest.get(rnd.nextInt(oldest.size())).getId(), LIFECYCLE[step + 1]);
+    }
+
+    private void restock(Store store) {
+        List<Product> low = store.lowStockProducts();
+        if (low.isEmpty()) return;
+        Product p = low.get(0);
+        store.restock(p.getSku(), Math.max(1, p.getLowStockThreshold() * 10));
+    }
+
+    private int popular(SplittableRandom rnd) {
+        int rank = Arrays.binarySearch(zipfCdf, rnd.nextDouble());
+        if (rank < 0) rank = -rank - 1;
+        return skuOfRank[Math.min(rank, skus - 1)];
+    }
+
+    private void report(Stats[] stats, int seconds) {
+        long total = 0;
+        System.out.printf("%n%-9s %10s %10s %9s %10s %10s %10s %10s  %s%n",
+                "op", "ok/s", "rejected", "rej %", "p50 us", "p99 us", "p999 us", "max us", "top rejections");
+        for (Op op : OPS) {
+            Stats s = stats[op.ordinal()];
+            long ok = s.ok.sum();
+            long rejected = s.rejectedTotal();
+            total += ok + rejected;
+            if (ok + rejected == 0) continue;
+            System.out.printf("%-9s %,10.0f %,10d %8.2f%% %,10.1f %,10.1f %,10.1f %,10.1f  %s%n",
+                    op.name().toLowerCase(), ok / (double) seconds, rejected, 100.0 * rejected / (ok + rejected),
+                    s.latency.percentile(0.50) / 1e3, s.latency.percentile(0.99) / 1e3,
+                    s.latency.percentile(0.999) / 1e3, s.latency.max() / 1e3, topRejections(s));
+        }
+        System.out.printf("%ntotal %,d requests, %,.0f/s against a target of %,d/s%n", total, total / (double) seconds, rate);
+    }
+
+    private static String topRejections(Stats s) {
+        StringBuilder sb = new StringBuilder();
+        for (Rejection r : REASONS) {
+            long n = s.rejected[r.ordinal()].sum();
+            if (n > 0) sb.append(sb.length() == 0 ? "" : ", ").append(r).append('=').append(n);
+        }
+        return sb.toString();
+    }
+
+    private void parseMix(String spec) {
+        for (String part : spec.split(",")) {
+            String[] kv = part.split("=");
+            if (kv.length != 2) throw new IllegalArgumentException("Bad --mix entry: " + part);
+            int w = Integer.parseInt(kv[1].trim());
+            if (w < 0) throw new IllegalArgumentException("Mix weights must be >= 0");
+            weights[Op.valueOf(kv[0].trim().toUpperCase()).ordinal()] = w;
+        }
+        if (totalWeight() == 0) throw new IllegalArgumentException("--mix needs at least one weight > 0");
+    }
+
+    private String mix() {
+        StringBuilder sb = new StringBuilder();
+        for (Op op : OPS) sb.append(sb.length() == 0 ? "" : ",").append(op.name().toLowerCase()).append('=').append(weights[op.ordinal()]);
+        return sb.toString();
+    }
+
+    private int totalWeight() {
+        int n = 0;
+        for (int w : weights) n += w;
+        return n;
+    }
+
+    private Op pick(int roll) {
+        for (Op op : OPS) {
+            roll -= weights[op.ordinal()];
+            if (roll < 0) return op;
+        }
+        throw new IllegalStateException("Mix weights changed");
+    }
+
+    private int positive(String option, int fallback) {
+        int v = Integer.parseInt(options.getOrDefault(option, String.valueOf(fallback)));
+        if (v <= 0) throw new IllegalArgumentException("--" + option + " must be > 0");
+        return v;
+    }
+
+    private static String sku(int i) {
+        return "LS-" + i;
+    }
+
+    private static String shopper(int i) {
+        return "shopper" + i;
+    }
+}
@@ -0,0 +1,99 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+public class OrderListing {
+    private static final int SKUS = 1024;
+
+    public static void main(String[] args) {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Store store = new Store();
+        for (int i = 0; i < SKUS; i++) {
+            store.addProduct(new Product("L-" + i, "Item " + i, new BigDecimal(String.format("%d.%02d", 1 + i % 50, i % 100)),
+                    Integer.MAX_VALUE / 2, 0));
+        }
+        Random rnd = new Random(1);
+        List<CartRequest> batch = new ArrayList<>(1000);
+        for (int placed = 0; placed < orders; placed += batch.size()) {
+            batch.clear();
+            for (int b = 0; b < Math.min(1000, orders - placed); b++) {
+                Map<String, Integer> cart = new HashMap<>();
+                int lines = 1 + rnd.nextInt(5);
+                for (int l = 0; l < lines; l++) cart.merge("L-" + rnd.nextInt(SKUS), 1 + rnd.nextInt(3), Integer::sum);
+                batch.add(new CartRequest("user" + rnd.nextInt(1000), cart));
+            }
+            store.placeOrders(batch);
+        }
+        List<Order> all = store.listAllOrders();
+
+        // The old object graph: BigDecimal unit prices, re-summed by total() on every listing.
+        BigDecimal[][] unitPrices = new BigDecimal[all.size()][];
+        int[][] quantities = new int[all.size()][];
+        for (int o = 0; o < all.size(); o++) {
+            List<OrderItem> items = all.get(o).getItems();
+            unitPrices[o] = new BigDecimal[items.size()];
+            quantities[o] = new int[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                unitPrices[o][i] = items.get(i).getUnitPrice().toBigDecimal();
+                quantities[o][i] = items.get(i).getQuantity();
+            }
+        }
+
+        System.out.printf("%,d orders, best of %d rounds%n", all.size(), rounds);
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        long sink = 0;
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            sink += sumOld(unitPrices, quantities);
+            long t1 = System.nanoTime();
+            sink += sumCached(all);
+            long t2 = System.nanoTime();
+            sink += formatOld(unitPrices, quantities);
+            long t3 = System.nanoTime();
+            sink += formatCached(all);
+            long t4 = System.nanoTime();
+            best[0] = Math.min(best[0], t1 - t0);
+            best[1] = Math.min(best[1], t2 - t1);
+            best[2] = Math.min(best[2], t3 - t2);
+            best[3] = Math.min(best[3], t4 - t3);
+        }
+        System.out.printf("%-28s %,10d ms%n", "BigDecimal re-sum", best[0] / 1_000_000);
+        System.out.printf("%-28s %,10d ms%n", "cached Money total", best[1] / 1_000_000);
+        System.out.printf("%-28s %,10d ms%n", "BigDecimal re-sum + text", best[2] / 1_000_000);
+        System.out.printf("%-28s %,10d ms%n", "cached Money total + text", best[3] / 1_000_000);
+        if (sink == 42) System.out.println();
+    }
+
+    private static long sumOld(BigDecimal[][] unitPrices, int[][] quantities) {
+        BigDecimal grand = BigDecimal.ZERO;
+        for (int o = 0; o < unitPrices.length; o++) grand = grand.add(oldTotal(unitPrices[o], quantities[o]));
+        return grand.hashCode();
+    }
+
+    private static long sumCached(List<Order> all) {
+        long grand = 0;
+        for (Order o : all) grand += o.total().minorUnits();
+        return grand;
+    }
+
+    private static long formatOld(BigDecimal[][] unitPrices, int[][] quantities) {
+        long chars = 0;
+        for (int o = 0; o < unitPrices.length; o++) chars += oldTotal(unitPrices[o], quantities[o]).toPlainString().length();
+        return chars;
+    }
+
+    private static long formatCached(List<Order> all) {
+        long chars = 0;
+        for (Order o : all) chars += o.total().toString().length();
+        return chars;
+    }
+
+    private static BigDecimal oldTotal(BigDecimal[] unitPrices, int[] quantities) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < unitPrices.length; i++) sum = sum.add(unitPrices[i].multiply(BigDecimal.valueOf(quantities[i])));
+        return sum;
+    }
+}
@@ -0,0 +1,70 @@
+package com.company.ims;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.*;
+
+// Heap held per order in an in-memory store, plus SKU lookup and order placement rates over a large catalog.
+public class OrderMemory {
+    private static final int SKUS = 100_000;
+
+    public static void main(String[] args) {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Store store = new Store();
+        String[] skus = new String[SKUS];
+        for (int i = 0; i < SKUS; i++) {
+            skus[i] = "OM-" + i;
+            store.addProduct(new Product(skus[i], "Item " + i, new BigDecimal("4.99"), Integer.MAX_VALUE / 2, 0));
+        }
+
+        long base = usedHeap();
+        fill(store, skus, orders);
+        long used = usedHeap() - base;
+        System.out.printf("%,d orders: %,d KB heap, %,d B/order%n", orders, used >> 10, used / orders);
+
+        // Fresh String keys, as request parsing would hand them over, so cached hashes do not flatter the lookup.
+        String[] probes = new String[1 << 20];
+        Random rnd = new Random(7);
+        for (int i = 0; i < probes.length; i++) probes[i] = new String("OM-" + rnd.nextInt(SKUS));
+        for (int round = 0; round < 5; round++) {
+            long found = 0;
+            long t0 = System.nanoTime();
+            for (String sku : probes) if (store.findProduct(sku).isPresent()) found++;
+            long ns = System.nanoTime() - t0;
+            if (found != probes.length) throw new IllegalStateException("Missing SKUs");
+            System.out.printf("findProduct: %,.0f ns/op%n", (double) ns / probes.length);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            int n = 200_000;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                Map<String, Integer> cart = new HashMap<>();
+                for (int l = 0; l < 3; l++) cart.merge(probes[(i * 3 + l) & (probes.length - 1)], 1, Integer::sum);
+                store.placeOrder("user" + (i % 10_000), cart);
+            }
+            long ns = System.nanoTime() - t0;
+            System.out.printf("placeOrder (3 lines): %,.0f ns/op%n", (double) ns / n);
+        }
+    }
+
+    private static void fill(Store store, String[] skus, int count) {
+        Random rnd = new Random(count);
+        List<CartRequest> batch = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            Map<String, Integer> cart = new HashMap<>();
+            int lines = 1 + rnd.nextInt(3);
+            for (int l = 0; l < lines; l++) cart.merge(skus[rnd.nextInt(SKUS)], 1 + rnd.nextInt(2), Integer::sum);
+            batch.add(new CartRequest("user" + rnd.nextInt(10_000), cart));
+            if (batch.size() == 1000 || n == count - 1) {
+                store.placeOrders(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,84 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+// Search latency on a generated catalog (1M SKUs by default) with names built from small word lists, for single
+// prefixes of different selectivity, multi-word queries, exact SKUs and the in-stock filter, against a full walk of
+// the catalog doing the same prefix match. Also times renames and removals, which keep the index current.
+public class ProductSearchLatency {
+    private static final String[] ADJECTIVES = {"classic", "compact", "deluxe", "heavy", "light", "mini", "organic",
+            "premium", "rugged", "smart", "soft", "slim", "steel", "vintage", "wireless", "wooden"};
+    private static final String[] COLOURS = {"black", "blue", "brown", "green", "grey", "orange", "pink", "purple",
+            "red", "silver", "teal", "white", "yellow"};
+    private static final String[] NOUNS = {"backpack", "blender", "bottle", "camera", "chair", "charger", "desk",
+            "headphones", "jacket", "kettle", "lamp", "mug", "notebook", "pan", "pillow", "speaker", "teapot", "watch"};
+    private static final String[][] QUERIES = {
+            {"mug"}, {"blu"}, {"b"}, {"wireless speaker"}, {"vintage teal kettle"}, {"zzz"}, {"SKU-777777"}, {"sku 12345"},
+    };
+    private static final int ROUNDS = 20_000;
+
+    public static void main(String[] args) {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Store store = new Store(false);
+        Random rnd = new Random(7);
+        long start = System.nanoTime();
+        List<Product> batch = new ArrayList<>();
+        for (int i = 0; i < skus; i++) {
+            String name = ADJECTIVES[rnd.nextInt(ADJECTIVES.length)] + " " + COLOURS[rnd.nextInt(COLOURS.length)] + " "
+                    + NOUNS[rnd.nextInt(NOUNS.length)] + " " + (100 + rnd.nextInt(900));
+            batch.add(new Product("SKU-" + i, name, new BigDecimal("9.99"), rnd.nextInt(4) == 0 ? 0 : 10, 0));
+            if (batch.size() == 10_000) {
+                store.putProducts(batch, false, new boolean[batch.size()]);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) store.putProducts(batch, false, new boolean[batch.size()]);
+        System.out.printf("%,d SKUs loaded and indexed in %,d ms%n", skus, (System.nanoTime() - start) / 1_000_000);
+
+        System.out.printf("%-22s %-8s %8s %12s %12s%n", "query", "filter", "hits", "index us", "scan us");
+        for (String[] q : QUERIES) {
+            for (boolean inStock : new boolean[] {false, true}) {
+                int hits = store.searchProducts(q[0], 10, inStock).size();
+                double index = time(() -> store.searchProducts(q[0], 10, inStock).size(), ROUNDS);
+                double scan = time(() -> scan(store, q[0], inStock), 3);
+                System.out.printf("%-22s %-8s %8d %,12.2f %,12.0f%n", q[0], inStock ? "inStock" : "-", hits, index, scan);
+            }
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) store.findProduct("SKU-" + i).get().setName("renamed gadget " + i);
+        System.out.printf("rename: %,.2f us each%n", (System.nanoTime() - start) / 1e3 / 10_000);
+        start = System.nanoTime();
+        for (int i = 10_000; i < 10_100; i++) store.removeProduct("SKU-" + i);
+        System.out.printf("remove: %,.2f us each%n", (System.nanoTime() - start) / 1e3 / 100);
+        System.out.printf("gadget -> %d hits, SKU-10050 -> %d hits%n",
+                store.searchProducts("gadget", 10, false).size(), store.searchProducts("SKU-10050", 10, false).size());
+    }
+
+    private interface Query {
+        int run();
+    }
+
+    // Average microseconds per call, after a warm-up of the same size.
+    private static double time(Query q, int rounds) {
+        int sink = 0;
+        for (int i = 0; i < rounds; i++) sink += q.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) sink += q.run();
+        if (sink < 0) throw new AssertionError();
+        return (System.nanoTime() - start) / 1e3 / rounds;
+    }
+
+    // What the catalog offered before the index: walk every product to find all the matches there are to rank.
+    private static int scan(Store store, String query, boolean inStock) {
+        List<String> terms = ProductSearchIndex.tokens(query);
+        return (int) store.streamProducts(null)
+                .filter(p -> !inStock || p.getStock() > 0)
+                .filter(p -> {
+                    List<String> words = ProductSearchIndex.tokens(p.getName() + " " + p.getSku());
+                    return terms.stream().allMatch(t -> words.stream().anyMatch(w -> w.startsWith(t)));
+                })
+                .count();
+    }
+}
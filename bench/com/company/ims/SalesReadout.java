@@ -0,0 +1,101 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Writers place, pay, ship and cancel orders on every thread; afterwards the store's running sales totals must match
+// a full scan of the orders. Then the time to answer "orders per status, revenue by SKU, spend per customer" is
+// compared between the totals and the scan that used to be the only way.
+public class SalesReadout {
+    private static final int SKUS = 1_000;
+    private static final int CUSTOMERS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int ordersPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        Store store = new Store();
+        for (int i = 0; i < SKUS; i++) {
+            store.addProduct(new Product("SR-" + i, "Item " + i, new BigDecimal((1 + i % 50) + ".25"), Integer.MAX_VALUE / 2, 0));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(pool.submit(() -> {
+                Random rnd = new Random(id);
+                for (int n = 0; n < ordersPerThread; n++) {
+                    Map<String, Integer> cart = new HashMap<>();
+                    for (int l = 1 + rnd.nextInt(3); l > 0; l--) cart.merge("SR-" + rnd.nextInt(SKUS), 1 + rnd.nextInt(3), Integer::sum);
+                    Order o = store.placeOrder("c" + rnd.nextInt(CUSTOMERS), cart);
+                    int fate = rnd.nextInt(4);
+                    if (fate == 0) {
+                        store.cancelOrderAsCustomer(o.getCustomerUsername(), o.getId());
+                    } else if (fate == 1) {
+                        store.updateOrderStatusAsAdmin(o.getId(), OrderStatus.PAID);
+                        store.updateOrderStatusAsAdmin(o.getId(), OrderStatus.CANCELLED);
+                    } else if (fate == 2) {
+                        for (OrderStatus s : List.of(OrderStatus.PAID, OrderStatus.PACKED, OrderStatus.SHIPPED))
+                            store.updateOrderStatusAsAdmin(o.getId(), s);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        System.out.printf("%d threads placed %,d orders in %,d ms%n", threads, threads * (long) ordersPerThread,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        SalesAggregates sales = store.sales();
+        Scan scan = scan(store);
+        long mismatches = 0;
+        for (OrderStatus s : OrderStatus.values()) {
+            if (sales.getOrderCount(s) != scan.byStatus.getOrDefault(s, 0L)) mismatches++;
+        }
+        if (sales.getRevenue().minorUnits() != scan.revenue) mismatches++;
+        for (int i = 0; i < SKUS; i++) {
+            if (sales.getRevenue("SR-" + i).minorUnits() != scan.bySku.getOrDefault("SR-" + i, 0L)) mismatches++;
+        }
+        for (int c = 0; c < CUSTOMERS; c++) {
+            if (sales.getCustomerSpend("c" + c).minorUnits() != scan.byCustomer.getOrDefault("c" + c, 0L)) mismatches++;
+        }
+        System.out.printf("totals vs scan: %d mismatches (%s)%n", mismatches, sales.dump().trim());
+
+        int rounds = 20;
+        long sink = 0;
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) sink += scan(store).revenue;
+        double scanMicros = (System.nanoTime() - t0) / 1e3 / rounds;
+        t0 = System.nanoTime();
+        for (int r = 0; r < rounds * 1000; r++) {
+            sink += sales.getOrdersByStatus().size() + sales.getRevenue("SR-" + r % SKUS).minorUnits()
+                    + sales.getCustomerSpend("c" + r % CUSTOMERS).minorUnits();
+        }
+        double readMicros = (System.nanoTime() - t0) / 1e3 / (rounds * 1000);
+        System.out.printf("one dashboard read: scan %,.0f us, running totals %,.2f us (%d)%n", scanMicros, readMicros, sink & 1);
+        if (mismatches > 0) throw new AssertionError(mismatches + " totals differ from the scan");
+    }
+
+    private static final class Scan {
+        final Map<OrderStatus, Long> byStatus = new EnumMap<>(OrderStatus.class);
+        final Map<String, Long> bySku = new HashMap<>();
+        final Map<String, Long> byCustomer = new HashMap<>();
+        long revenue;
+    }
+
+    private static Scan scan(Store store) {
+        Scan s = new Scan();
+        for (Order o : store.listAllOrders()) {
+            s.byStatus.merge(o.getStatus(), 1L, Long::sum);
+            if (o.getStatus() == OrderStatus.CANCELLED) continue;
+            s.revenue += o.total().minorUnits();
+            s.byCustomer.merge(o.getCustomerUsername(), o.total().minorUnits(), Long::sum);
+            for (OrderItem it : o.getItems()) s.bySku.merge(it.getSku(), it.lineTotal().minorUnits(), Long::sum);
+        }
+        return s;
+    }
+}
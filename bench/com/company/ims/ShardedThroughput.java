@@ -0,0 +1,54 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Order placement rate as the catalog is split over more in-process shards. One-line carts always stay on one
+// shard; three-line carts mostly span shards and go through prepare/commit.
+public class ShardedThroughput {
+    private static final int SKUS = 10_000;
+    private static final int[] SHARDS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+        run(4, threads, 3, millis / 2);
+        System.out.printf("%d threads, %d ms per run%n", threads, millis);
+        System.out.printf("%-8s %16s %16s%n", "shards", "1-line orders/s", "3-line orders/s");
+        for (int shards : SHARDS) {
+            System.out.printf("%-8d %,16.0f %,16.0f%n", shards, run(shards, threads, 1, millis), run(shards, threads, 3, millis));
+        }
+    }
+
+    private static double run(int shardCount, int threads, int lines, long millis) throws Exception {
+        try (ShardedStore store = new ShardedStore(shardCount)) {
+            for (int i = 0; i < SKUS; i++) {
+                store.addProduct(new Product("SH-" + i, "Item " + i, new BigDecimal("9.99"), Integer.MAX_VALUE / 2, 0));
+            }
+
+            LongAdder orders = new LongAdder();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                futures.add(pool.submit(() -> {
+                    Random rnd = new Random(id);
+                    while (System.nanoTime() < deadline) {
+                        Map<String, Integer> cart = new HashMap<>();
+                        for (int l = 0; l < lines; l++) cart.merge("SH-" + rnd.nextInt(SKUS), 1, Integer::sum);
+                        store.placeOrder("user" + id, cart);
+                        orders.increment();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            pool.shutdown();
+            return orders.sum() * 1000.0 / millis;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Writers place, batch-place, pay, ship and cancel orders and rename/reprice products while a reporter keeps opening
+// snapshot views. In every view each SKU's stock plus the units held by its non-cancelled orders must add up to the
+// starting stock, name and price must come from the same edit, and the low-stock list must match the stock shown.
+// The same checks against live reads show what a report without a view would see. Then placement throughput is
+// measured with and without the reporter running.
+public class SnapshotConsistency {
+    private static final int SKUS = 64;
+    private static final int INITIAL = 5_000;
+    private static final int THRESHOLD = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 3000;
+
+        System.out.printf("%d writer threads, %d ms per run%n", threads, millis);
+        Result views = run(threads, millis, true, true);
+        System.out.printf("views:      %,d checked, %,d inconsistent, open p50 %,d us, max %,d us%n",
+                views.reports, views.violations, views.openMicrosP50, views.openMicrosMax);
+        Result live = run(threads, millis, false, true);
+        System.out.printf("live reads: %,d checked, %,d inconsistent%n", live.reports, live.violations);
+
+        double alone = run(threads, millis, true, false).ordersPerSecond;
+        System.out.printf("placement:  %,.0f orders/s alone, %,.0f with a reporter on views%n", alone, views.ordersPerSecond);
+        if (views.violations > 0) throw new AssertionError(views.violations + " inconsistent snapshot views");
+    }
+
+    private static final class Result {
+        long reports;
+        long violations;
+        long openMicrosP50;
+        long openMicrosMax;
+        double ordersPerSecond;
+    }
+
+    private static Result run(int threads, long millis, boolean useViews, boolean report) throws Exception {
+        Store store = new Store();
+        for (int i = 0; i < SKUS; i++) {
+            store.addProduct(new Product("SC-" + i, name(i, 0), price(0), INITIAL, THRESHOLD));
+        }
+
+        LongAdder placed = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 2);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            writers.add(pool.submit(() -> {
+                Random rnd = new Random(id);
+                while (!stop.get()) {
+                    if (rnd.nextInt(8) == 0) {
+                        List<CartRequest> batch = new ArrayList<>();
+                        for (int b = 0; b < 16; b++) batch.add(new CartRequest("user" + id, cart(rnd)));
+                        for (OrderResult r : store.placeOrders(batch)) if (r.isSuccess()) placed.increment();
+                        continue;
+                    }
+                    Order o;
+                    try {
+                        o = store.placeOrder("user" + id, cart(rnd));
+                        placed.increment();
+                    } catch (IllegalArgumentException ex) {
+                        continue;
+                    }
+                    int fate = rnd.nextInt(4);
+                    if (fate == 0) {
+                        store.cancelOrderAsCustomer("user" + id, o.getId());
+                    } else if (fate == 1) {
+                        store.updateOrderStatusAsAdmin(o.getId(), OrderStatus.PAID);
+                        store.updateOrderStatusAsAdmin(o.getId(), OrderStatus.CANCELLED);
+                    } else if (fate == 2) {
+                        for (OrderStatus s : List.of(OrderStatus.PAID, OrderStatus.PACKED, OrderStatus.SHIPPED))
+                            store.updateOrderStatusAsAdmin(o.getId(), s);
+                    }
+                }
+                return null;
+            }));
+        }
+        writers.add(pool.submit(() -> {
+            Random rnd = new Random(-1);
+            for (int edit = 1; !stop.get(); edit++) {
+                int i = rnd.nextInt(SKUS);
+                store.updateProduct("SC-" + i, name(i, edit), new BigDecimal(edit + ".00"), null);
+                Thread.sleep(0, 100_000);
+            }
+            return null;
+        }));
+
+        Result result = new Result();
+        List<Long> openMicros = new ArrayList<>();
+        Future<?> reporter = !report ? null : pool.submit(() -> {
+            while (!stop.get()) {
+                if (useViews) {
+                    long t0 = System.nanoTime();
+                    try (StoreView view = store.snapshot()) {
+                        openMicros.add((System.nanoTime() - t0) / 1000);
+                        if (!consistent(view.listProducts(), view.listAllOrders(), view.lowStockProducts())) result.violations++;
+                    }
+                } else {
+                    List<Order> orders = store.listAllOrders();
+                    List<Product> products = new ArrayList<>(store.listProducts());
+                    if (!consistent(products, orders, store.lowStockProducts())) result.violations++;
+                }
+                result.reports++;
+            }
+            return null;
+        });
+
+        long start = System.nanoTime();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Future<?> f : writers) f.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (reporter != null) reporter.get();
+        pool.shutdown();
+        store.close();
+
+        result.ordersPerSecond = placed.sum() / seconds;
+        if (!openMicros.isEmpty()) {
+            Collections.sort(openMicros);
+            result.openMicrosP50 = openMicros.get(openMicros.size() / 2);
+            result.openMicrosMax = openMicros.get(openMicros.size() - 1);
+        }
+        return result;
+    }
+
+    private static boolean consistent(List<Product> products, List<Order> orders, List<Product> lowStock) {
+        Map<String, Integer> held = new HashMap<>();
+        for (Order o : orders) {
+            if (o.getStatus() == OrderStatus.CANCELLED) continue;
+            for (OrderItem it : o.getItems()) held.merge(it.getSku(), it.getQuantity(), Integer::sum);
+        }
+        Set<String> expectedLow = new HashSet<>();
+        for (Product p : products) {
+            if (!p.getSku().startsWith("SC-")) continue;
+            if (p.getStock() + held.getOrDefault(p.getSku(), 0) != INITIAL) return false;
+            int edit = p.getPrice().minorUnits() == 0 ? 0 : (int) (p.getPrice().minorUnits() / 100);
+            if (!p.getName().equals(name(Integer.parseInt(p.getSku().substring(3)), edit))) return false;
+            if (p.getStock() <= p.getLowStockThreshold()) expectedLow.add(p.getSku());
+        }
+        Set<String> low = new HashSet<>();
+        for (Product p : lowStock) if (p.getSku().startsWith("SC-")) low.add(p.getSku());
+        return low.equals(expectedLow);
+    }
+
+    private static Map<String, Integer> cart(Random rnd) {
+        Map<String, Integer> cart = new HashMap<>();
+        int lines = 1 + rnd.nextInt(4);
+        for (int l = 0; l < lines; l++) cart.merge("SC-" + rnd.nextInt(SKUS), 1 + rnd.nextInt(3), Integer::sum);
+        return cart;
+    }
+
+    private static String name(int sku, int edit) {
+        return "Item " + sku + " edit " + edit;
+    }
+
+    private static BigDecimal price(int edit) {
+        return new BigDecimal(edit + ".00");
+    }
+}
@@ -0,0 +1,76 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class SnapshotStartup {
+    public static void main(String[] args) throws Exception {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int orders = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        int tail = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        Path dir = args.length > 3 ? Path.of(args[3]) : Files.createTempDirectory("ims-startup-bench");
+
+        System.out.printf("Building %,d SKUs, %,d orders (+%,d journal tail) in %s%n", skus, orders, tail, dir);
+        try (Store store = Store.open(dir, FsyncPolicy.NEVER, 50, 0)) {
+            for (int i = 0; i < skus; i++) {
+                store.addProduct(new Product(sku(i), "Item " + i, new BigDecimal("4.99"), Integer.MAX_VALUE / 2, 10));
+            }
+            placeOrders(store, orders, skus, 1);
+
+            long t0 = System.nanoTime();
+            store.checkpoint();
+            System.out.printf("checkpoint: %,d ms, snapshot %,d MB%n", ms(t0), bytes(dir, "snapshot-") >> 20);
+
+            placeOrders(store, tail, skus, 2);
+        }
+        System.out.printf("journal tail: %,d KB%n", bytes(dir, "journal-") >> 10);
+
+        System.gc();
+        long t0 = System.nanoTime();
+        try (Store store = Store.open(dir, FsyncPolicy.NEVER, 50, 0)) {
+            long elapsed = ms(t0);
+            System.out.printf("cold start: %,d ms (%,d products, %,d orders)%n",
+                    elapsed, store.products().size(), store.orders().size());
+        } finally {
+            if (args.length <= 3) deleteRecursively(dir);
+        }
+    }
+
+    private static void placeOrders(Store store, int count, int skus, long seed) {
+        Random rnd = new Random(seed);
+        Map<String, Integer> cart = new HashMap<>();
+        for (int n = 0; n < count; n++) {
+            cart.clear();
+            int lines = 1 + rnd.nextInt(3);
+            for (int l = 0; l < lines; l++) cart.merge(sku(rnd.nextInt(skus)), 1 + rnd.nextInt(2), Integer::sum);
+            store.placeOrder("user" + rnd.nextInt(100_000), cart);
+        }
+    }
+
+    private static String sku(int i) {
+        return "BENCH-" + i;
+    }
+
+    private static long ms(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static long bytes(Path dir, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix))
+                    .mapToLong(p -> p.toFile().length())
+                    .sum();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+}
@@ -0,0 +1,145 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class StoreStress {
+    private static final int SKUS = 256;
+    private static final int HOT_SKUS = 4;
+    // Speedup over one thread, per core used, below which the throughput run fails.
+    private static final double DEFAULT_MIN_EFFICIENCY = 0.5;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        double minEfficiency = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_MIN_EFFICIENCY;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("--- Oversell check (" + HOT_SKUS + " hot SKUs, limited stock) ---");
+        for (int threads = 1; threads <= Math.max(2, maxThreads); threads *= 2) {
+            oversellCheck(threads);
+        }
+
+        System.out.println("\n--- Throughput (" + SKUS + " SKUs, " + millis + " ms per run, " + cores + " cores) ---");
+        double base = 0;
+        double worst = Double.MAX_VALUE;
+        int worstThreads = 0;
+        // Unreported, so the one-thread baseline is not measured on a cold JIT.
+        throughput(1, millis);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double rate = throughput(threads, millis);
+            System.out.printf("threads=%d orders/sec=%,.0f%n", threads, rate);
+            if (threads == 1) base = rate;
+            // Threads beyond the cores can not add throughput, so efficiency is measured against the cores used.
+            int used = Math.min(threads, cores);
+            double speedup = rate / base;
+            double efficiency = speedup / used;
+            System.out.printf("  speedup=%.2fx over 1 thread, %.0f%% of %d core(s)%n", speedup, efficiency * 100, used);
+            if (used > 1 && efficiency < worst) {
+                worst = efficiency;
+                worstThreads = threads;
+            }
+        }
+
+        if (worstThreads == 0) {
+            System.out.println("Scaling check skipped: needs 2+ cores and 2+ threads (cores=" + cores + ")");
+        } else if (worst < minEfficiency) {
+            throw new AssertionError(String.format("Poor scaling: %.0f%% efficiency at %d threads, want %.0f%%",
+                    worst * 100, worstThreads, minEfficiency * 100));
+        } else {
+            System.out.printf("Scaling OK: worst efficiency %.0f%% at %d threads (min %.0f%%)%n",
+                    worst * 100, worstThreads, minEfficiency * 100);
+        }
+    }
+
+    private static void oversellCheck(int threads) throws Exception {
+        Store store = new Store();
+        int initial = 1000;
+        for (int i = 0; i < HOT_SKUS; i++) {
+            store.addProduct(new Product("HOT-" + i, "Hot " + i, new BigDecimal("1.00"), initial, 0));
+        }
+
+        LongAdder sold = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        runAll(threads, t -> {
+            Random rnd = new Random(t);
+            for (int n = 0; n < 5000; n++) {
+                Map<String, Integer> cart = new HashMap<>();
+                int lines = 1 + rnd.nextInt(HOT_SKUS);
+                for (int l = 0; l < lines; l++) cart.merge("HOT-" + rnd.nextInt(HOT_SKUS), 1 + rnd.nextInt(3), Integer::sum);
+                try {
+                    store.placeOrder("user" + t, cart);
+                    for (int q : cart.values()) sold.add(q);
+                } catch (IllegalArgumentException ex) {
+                    rejected.increment();
+                }
+            }
+        });
+
+        long remaining = 0;
+        for (int i = 0; i < HOT_SKUS; i++) {
+            int stock = store.findProduct("HOT-" + i).orElseThrow().getStock();
+            if (stock < 0) throw new AssertionError("Negative stock on HOT-" + i + ": " + stock);
+            remaining += stock;
+        }
+        long expected = (long) HOT_SKUS * initial - sold.sum();
+        if (remaining != expected) throw new AssertionError("Stock drift: remaining=" + remaining + " expected=" + expected);
+
+        long ordered = 0;
+        for (Order o : store.listAllOrders()) {
+            if (o.getCustomerUsername().startsWith("user")) {
+                for (OrderItem it : o.getItems()) ordered += it.getQuantity();
+            }
+        }
+        if (ordered != sold.sum()) throw new AssertionError("Orders disagree with sales: " + ordered + " vs " + sold.sum());
+
+        System.out.printf("threads=%d sold=%d rejected=%d remaining=%d OK%n", threads, sold.sum(), rejected.sum(), remaining);
+    }
+
+    private static double throughput(int threads, long millis) throws Exception {
+        Store store = new Store();
+        for (int i = 0; i < SKUS; i++) {
+            store.addProduct(new Product("S-" + i, "Item " + i, new BigDecimal("2.50"), Integer.MAX_VALUE / 2, 0));
+        }
+
+        LongAdder orders = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        runAll(threads, t -> {
+            Random rnd = new Random(31L * t);
+            while (System.nanoTime() < deadline) {
+                Map<String, Integer> cart = new HashMap<>();
+                for (int l = 0; l < 3; l++) cart.merge("S-" + rnd.nextInt(SKUS), 1, Integer::sum);
+                store.placeOrder("user" + t, cart);
+                orders.increment();
+            }
+        });
+
+        return orders.sum() * 1000.0 / millis;
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runAll(int threads, Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                worker.run(id);
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.company.ims.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Same command line as the stock JMH launcher, with the GC profiler always on so every run reports allocation rates.
+public final class BenchmarkMain {
+    private static final List<String> INFO_FLAGS = Arrays.asList("-h", "-l", "-lp", "-lprof", "-lrf");
+
+    private BenchmarkMain() { }
+
+    public static void main(String[] args) throws Exception {
+        for (String a : args) {
+            if (INFO_FLAGS.contains(a)) {
+                org.openjdk.jmh.Main.main(args);
+                return;
+            }
+        }
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,73 @@
+package com.company.ims.benchmarks;
+
+import com.company.ims.Money;
+import com.company.ims.Order;
+import com.company.ims.Product;
+import com.company.ims.Store;
+import com.company.ims.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the per-operation metrics: the same calls with recording switched on and off.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmarks {
+    private static final int SKUS = 1000;
+
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    private Store store;
+    private Map<String, Integer>[] carts;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void build() {
+        store = new Store();
+        store.metrics().setEnabled(metrics);
+        for (int i = 0; i < SKUS; i++) {
+            store.addProduct(new Product("MO-" + i, "Item " + i, Money.ofMinor(250), Integer.MAX_VALUE / 2, 0));
+        }
+        carts = new Map[SKUS];
+        for (int i = 0; i < SKUS; i++) {
+            carts[i] = new HashMap<>();
+            carts[i].put("MO-" + i, 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        store.close();
+    }
+
+    @Benchmark
+    public Optional<User> authenticate() {
+        return store.authenticate("admin", "admin123");
+    }
+
+    @Benchmark
+    public Order placeOrder() {
+        return store.placeOrder("customer", carts[next++ % SKUS]);
+    }
+}
@@ -0,0 +1,136 @@
+package com.company.ims.benchmarks;
+
+import com.company.ims.Money;
+import com.company.ims.Order;
+import com.company.ims.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Store hot paths. The nested Single and Contended classes run the same methods on one thread and on every core.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public abstract class StoreBenchmarks {
+    static final int CANCEL_BATCH = 10_000;
+
+    @Threads(1)
+    public static class Single extends StoreBenchmarks { }
+
+    @Threads(Threads.MAX)
+    public static class Contended extends StoreBenchmarks { }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private SplittableRandom rnd;
+
+        @Setup(Level.Trial)
+        public void seed() {
+            rnd = new SplittableRandom(Thread.currentThread().getId());
+        }
+
+        int next(int bound) {
+            return rnd.nextInt(bound);
+        }
+    }
+
+    // Carts are built up front so the benchmark measures placeOrder, not HashMap churn.
+    @State(Scope.Thread)
+    public static class Carts {
+        private static final int COUNT = 1024;
+
+        @Param({"1", "5", "50"})
+        public int lines;
+
+        private Map<String, Integer>[] carts;
+        private String[] owners;
+        private int next;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void build(StoreFixture f) {
+            SplittableRandom rnd = new SplittableRandom(Thread.currentThread().getId());
+            carts = new Map[COUNT];
+            owners = new String[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                carts[i] = f.cart(rnd, lines);
+                owners[i] = f.customers[rnd.nextInt(f.customers.length)];
+            }
+        }
+    }
+
+    // A fresh batch of PLACED orders per iteration, one per invocation, so every call cancels a live order.
+    @State(Scope.Thread)
+    public static class Cancellations {
+        private String customer;
+        private long[] ids;
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void place(StoreFixture f) {
+            SplittableRandom rnd = new SplittableRandom(Thread.currentThread().getId());
+            customer = f.customers[rnd.nextInt(f.customers.length)];
+            ids = new long[CANCEL_BATCH];
+            for (int i = 0; i < ids.length; i++) ids[i] = f.store.placeOrder(customer, f.cart(rnd, 3)).getId();
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public Order placeOrder(StoreFixture f, Carts c) {
+        int i = c.next++ & (Carts.COUNT - 1);
+        return f.store.placeOrder(c.owners[i], c.carts[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = CANCEL_BATCH)
+    @Measurement(iterations = 10, batchSize = CANCEL_BATCH)
+    public void cancelOrderAsCustomer(StoreFixture f, Cancellations c) {
+        f.store.cancelOrderAsCustomer(c.customer, c.ids[c.next++]);
+    }
+
+    @Benchmark
+    public Optional<Product> findProduct(StoreFixture f, Cursor c) {
+        return f.store.findProduct(f.skuNames[c.next(f.skuNames.length)]);
+    }
+
+    @Benchmark
+    public List<Order> listOrdersForUser(StoreFixture f, Cursor c) {
+        return f.store.listOrdersForUser(f.customers[c.next(f.customers.length)]);
+    }
+
+    @Benchmark
+    public List<Order> listOrdersForUserPage(StoreFixture f, Cursor c) {
+        return f.store.listOrdersForUser(f.customers[c.next(f.customers.length)], 0, 20);
+    }
+
+    @Benchmark
+    public List<Product> lowStockProducts(StoreFixture f) {
+        return f.store.lowStockProducts();
+    }
+
+    @Benchmark
+    public Money orderTotal(StoreFixture f, Cursor c) {
+        return f.sampledOrders[c.next(f.sampledOrders.length)].total();
+    }
+}
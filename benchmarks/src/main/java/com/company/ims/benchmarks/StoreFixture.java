@@ -0,0 +1,81 @@
+package com.company.ims.benchmarks;
+
+import com.company.ims.CartRequest;
+import com.company.ims.Money;
+import com.company.ims.Order;
+import com.company.ims.Product;
+import com.company.ims.Store;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// One in-memory store per trial, filled with a seeded catalog and order history.
+@State(Scope.Benchmark)
+public class StoreFixture {
+    static final int CUSTOMERS = 10_000;
+    static final int STOCK = Integer.MAX_VALUE / 2;
+    private static final int SAMPLED_ORDERS = 1 << 16;
+    private static final int LOAD_BATCH = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int skus;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int orders;
+
+    Store store;
+    String[] skuNames;
+    String[] customers;
+    Order[] sampledOrders;
+
+    @Setup(Level.Trial)
+    public void build() {
+        store = new Store();
+        skuNames = new String[skus];
+        for (int i = 0; i < skus; i++) {
+            skuNames[i] = String.format("BM-%07d", i);
+            // Every hundredth SKU sits permanently under its threshold so lowStockProducts has something to return.
+            int threshold = i % 100 == 0 ? Integer.MAX_VALUE : 0;
+            store.addProduct(new Product(skuNames[i], "Item " + i, Money.ofMinor(99 + i % 10_000), STOCK, threshold));
+        }
+        customers = new String[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) customers[i] = "customer-" + i;
+
+        SplittableRandom rnd = new SplittableRandom(42);
+        List<CartRequest> batch = new ArrayList<>(LOAD_BATCH);
+        for (int placed = 0; placed < orders; placed += batch.size()) {
+            batch.clear();
+            for (int b = 0; b < Math.min(LOAD_BATCH, orders - placed); b++) {
+                batch.add(new CartRequest(customers[rnd.nextInt(CUSTOMERS)], cart(rnd, 1 + rnd.nextInt(3))));
+            }
+            store.placeOrders(batch);
+        }
+
+        int sample = Math.min(orders, SAMPLED_ORDERS);
+        sampledOrders = new Order[Math.max(sample, 1)];
+        long stride = Math.max(1, orders / sampledOrders.length);
+        long id = store.listOrders(0, 1).stream().mapToLong(Order::getId).findFirst().orElse(0);
+        for (int i = 0; i < sample; i++) sampledOrders[i] = store.findOrder(id + i * stride).orElseThrow();
+        if (sample == 0) sampledOrders[0] = store.placeOrder(customers[0], cart(rnd, 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        store.close();
+    }
+
+    Map<String, Integer> cart(SplittableRandom rnd, int lines) {
+        Map<String, Integer> cart = new HashMap<>();
+        for (int l = 0; l < lines; l++) cart.merge(skuNames[rnd.nextInt(skuNames.length)], 1 + rnd.nextInt(3), Integer::sum);
+        return cart;
+    }
+}
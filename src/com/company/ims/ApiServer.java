@@ -0,0 +1,632 @@
+package com.company.ims;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// JSON over HTTP on top of a Store, using only the JDK's built-in server. Callers authenticate with HTTP Basic
+// against the store's users; what they may do follows the same ADMIN/USER split as the console menus.
+public class ApiServer implements AutoCloseable {
+    private static final int BACKLOG = 4096;
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int DEFAULT_PAGE = 20;
+    private static final int MAX_PAGE = 1000;
+
+    private final Store store;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private ApiServer(Store store, HttpServer server, ExecutorService executor) {
+        this.store = store;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static ApiServer start(Store store, InetSocketAddress address) throws IOException {
+        if (store == null) throw new IllegalArgumentException("Store required");
+        HttpServer server = HttpServer.create(address, BACKLOG);
+        ExecutorService executor = requestExecutor();
+        ApiServer api = new ApiServer(store, server, executor);
+        server.createContext("/", api::handle);
+        server.setExecutor(executor);
+        server.start();
+        return api;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One virtual thread per request on JDK 21+. Older JDKs (or 19/20 without preview enabled) get a cached pool of
+    // platform threads instead; the handlers block on the journal either way, so they never share a thread.
+    static ExecutorService requestExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            AtomicInteger n = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread t = new Thread(r, "ims-http-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        boolean aborted = false;
+        try {
+            Object body;
+            int status = 200;
+            try {
+                User user = authenticate(ex);
+                String[] path = segments(ex.getRequestURI().getRawPath());
+                Map<String, String> query = query(ex.getRequestURI().getRawQuery());
+                String method = ex.getRequestMethod();
+                if (path.length > 0 && path[0].equals("products")) {
+                    body = products(ex, user, method, path, query);
+                    if (method.equals("POST") && path.length == 1) status = 201;
+                } else if (path.length > 0 && path[0].equals("orders")) {
+                    body = orders(ex, user, method, path, query);
+                    if (method.equals("POST") && path.length == 1) status = 201;
+                } else if (path.length == 1 && path[0].equals("metrics")) {
+                    requireMethod(method, "GET");
+                    requireAdmin(user);
+                    sendText(ex, store.metrics().dump());
+                    return;
+                } else if (path.length == 1 && path[0].equals("sales")) {
+                    requireMethod(method, "GET");
+                    requireAdmin(user);
+                    body = sales(store.sales(), query);
+                } else if (path.length == 2 && path[0].equals("import") && path[1].equals("products")) {
+                    requireMethod(method, "POST");
+                    requireAdmin(user);
+                    body = importResult(importProducts(ex, query));
+                } else if (path.length == 2 && path[0].equals("export")) {
+                    requireMethod(method, "GET");
+                    requireAdmin(user);
+                    sendCsv(ex, path[1]);
+                    return;
+                } else if (path.length == 1 && path[0].equals("low-stock")) {
+                    requireMethod(method, "GET");
+                    requireAdmin(user);
+                    body = list(store.lowStockProducts(), ApiServer::product);
+                } else {
+                    throw new ApiException(404, "No such endpoint");
+                }
+            } catch (ApiException e) {
+                if (e.status == 401) ex.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"ims\"");
+                status = e.status;
+                body = error(e.getMessage());
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                status = 400;
+                body = error(e.getMessage());
+            } catch (IllegalStateException e) {
+                status = 409;
+                body = error(e.getMessage());
+            } catch (UncheckedIOException e) {
+                status = 503;
+                body = error("Storage unavailable");
+            } catch (RuntimeException e) {
+                status = 500;
+                body = error("Internal error");
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            }
+            send(ex, status, body);
+        } catch (ResponseAborted e) {
+            // Closing would finish the body; left open, the server drops the connection instead.
+            aborted = true;
+            throw e;
+        } finally {
+            if (!aborted) ex.close();
+        }
+    }
+
+    private Object products(HttpExchange ex, User user, String method, String[] path, Map<String, String> query)
+            throws IOException {
+        if (path.length == 1) {
+            if (method.equals("GET")) {
+                int limit = limit(query);
+                String q = query.get("q");
+                if (q != null) {
+                    boolean inStock = Boolean.parseBoolean(query.getOrDefault("inStock", "false"));
+                    return page(list(store.searchProducts(q, limit, inStock), ApiServer::product), null);
+                }
+                List<Product> page = store.listProducts(query.get("after"), limit);
+                String next = page.size() == limit ? page.get(page.size() - 1).getSku() : null;
+                return page(list(page, ApiServer::product), next);
+            }
+            if (method.equals("PATCH")) {
+                requireAdmin(user);
+                return importResult(store.updateProducts(productUpdates(readObject(ex))));
+            }
+            requireMethod(method, "POST");
+            requireAdmin(user);
+            Map<String, Object> in = readObject(ex);
+            Product p = new Product(
+                    requireString(in, "sku"),
+                    requireString(in, "name"),
+                    Money.of(requireNumber(in, "price")),
+                    intField(in, "stock", 0),
+                    intField(in, "lowStockThreshold", 0));
+            store.addProduct(p);
+            return product(p);
+        }
+
+        String sku = path[1];
+        if (path.length == 2) {
+            switch (method) {
+                case "GET":
+                    return product(findProduct(sku));
+                case "PATCH":
+                case "PUT": {
+                    requireAdmin(user);
+                    findProduct(sku);
+                    Map<String, Object> in = readObject(ex);
+                    BigDecimal price = in.get("price") == null ? null : requireNumber(in, "price");
+                    Integer threshold = in.get("lowStockThreshold") == null ? null : intField(in, "lowStockThreshold", 0);
+                    store.updateProduct(sku, optionalString(in, "name"), price, threshold);
+                    return product(findProduct(sku));
+                }
+                case "DELETE":
+                    requireAdmin(user);
+                    findProduct(sku);
+                    store.removeProduct(sku);
+                    return Map.of("removed", sku);
+                default:
+                    throw new ApiException(405, "Method not allowed");
+            }
+        }
+        if (path.length == 3 && path[2].equals("restock")) {
+            requireMethod(method, "POST");
+            requireAdmin(user);
+            findProduct(sku);
+            Map<String, Object> in = readObject(ex);
+            store.restock(sku, intField(in, "quantity", 0));
+            return product(findProduct(sku));
+        }
+        throw new ApiException(404, "No such endpoint");
+    }
+
+    // {"updates":[{"sku":"SKU-100","price":"3.99","lowStockThreshold":5,"restock":20}, ...]}, each field but sku
+    // optional.
+    private static List<ProductUpdate> productUpdates(Map<String, Object> in) {
+        Object rows = in.get("updates");
+        if (!(rows instanceof List)) throw new IllegalArgumentException("updates must be an array");
+        List<ProductUpdate> updates = new ArrayList<>();
+        for (Object row : (List<?>) rows) {
+            if (!(row instanceof Map)) throw new IllegalArgumentException("Each update must be an object");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> u = (Map<String, Object>) row;
+            updates.add(new ProductUpdate(
+                    requireString(u, "sku"),
+                    u.get("price") == null ? null : requireNumber(u, "price"),
+                    u.get("lowStockThreshold") == null ? null : intField(u, "lowStockThreshold", 0),
+                    intField(u, "restock", 0)));
+        }
+        return updates;
+    }
+
+    private Object orders(HttpExchange ex, User user, String method, String[] path, Map<String, String> query)
+            throws IOException {
+        if (path.length == 1) {
+            if (method.equals("GET")) {
+                int limit = limit(query);
+                long after = longParam(query, "after");
+                List<Order> page = user.getRole() == Role.ADMIN
+                        ? store.listOrders(after, limit)
+                        : store.listOrdersForUser(user.getUsername(), after, limit);
+                Long next = page.size() == limit ? page.get(page.size() - 1).getId() : null;
+                return page(list(page, ApiServer::order), next);
+            }
+            requireMethod(method, "POST");
+            requireRole(user, Role.USER);
+            Map<String, Object> in = readObject(ex);
+            Object items = in.get("items");
+            if (!(items instanceof Map)) throw new IllegalArgumentException("items must be an object of SKU to quantity");
+            Map<String, Integer> cart = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) items).entrySet()) {
+                cart.put((String) e.getKey(), toInt(e.getValue(), "quantity"));
+            }
+            String key = ex.getRequestHeaders().getFirst("Idempotency-Key");
+            return order(store.placeOrder(user.getUsername(), cart, key));
+        }
+
+        if (path.length == 2 && path[1].equals("transition")) {
+            requireMethod(method, "POST");
+            requireAdmin(user);
+            Map<String, Object> in = readObject(ex);
+            String customer = optionalString(in, "customer");
+            return bulkResult(store.transitionOrders(status(requireString(in, "from")), instant(in, "createdFrom"),
+                    instant(in, "createdTo"), customer == null ? null : o -> o.getCustomerUsername().equals(customer),
+                    status(requireString(in, "to"))));
+        }
+
+        long id;
+        try {
+            id = Long.parseLong(path[1]);
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "Order not found");
+        }
+        Order o = store.findOrder(id).orElse(null);
+        // Other customers' orders look exactly like missing ones.
+        if (o == null || (user.getRole() != Role.ADMIN && !o.getCustomerUsername().equals(user.getUsername())))
+            throw new ApiException(404, "Order not found");
+
+        if (path.length == 2) {
+            requireMethod(method, "GET");
+            return order(o);
+        }
+        if (path.length == 3 && path[2].equals("cancel")) {
+            requireMethod(method, "POST");
+            requireRole(user, Role.USER);
+            store.cancelOrderAsCustomer(user.getUsername(), id);
+            return order(o);
+        }
+        if (path.length == 3 && path[2].equals("status")) {
+            requireMethod(method, "POST");
+            requireAdmin(user);
+            store.updateOrderStatusAsAdmin(id, status(requireString(readObject(ex), "status")));
+            return order(o);
+        }
+        throw new ApiException(404, "No such endpoint");
+    }
+
+    // The body is streamed straight into the importer, so feeds are not held to MAX_BODY_BYTES.
+    private ImportResult importProducts(HttpExchange ex, Map<String, String> query) throws IOException {
+        String mode = query.getOrDefault("mode", "insert");
+        if (!mode.equals("insert") && !mode.equals("upsert")) throw new IllegalArgumentException("Mode must be insert or upsert");
+        try (InputStream in = ex.getRequestBody()) {
+            return CatalogCsv.importProducts(store, Channels.newChannel(in), mode.equals("upsert"));
+        }
+    }
+
+    // The 200 goes out before the export runs, so a failure part way through can no longer become an error response.
+    // The exchange is abandoned instead, and the client sees a cut-off chunked body rather than a complete CSV.
+    private void sendCsv(HttpExchange ex, String what) throws IOException {
+        if (!what.equals("products") && !what.equals("orders")) throw new ApiException(404, "No such endpoint");
+        ex.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+        ex.sendResponseHeaders(200, 0);
+        OutputStream out = ex.getResponseBody();
+        try {
+            if (what.equals("products")) CatalogCsv.exportProducts(store, Channels.newChannel(out));
+            else CatalogCsv.exportOrders(store, Channels.newChannel(out));
+        } catch (IOException e) {
+            throw new ResponseAborted(e);
+        } catch (RuntimeException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            throw new ResponseAborted(e);
+        }
+        out.close();
+    }
+
+    private Product findProduct(String sku) {
+        return store.findProduct(sku).orElseThrow(() -> new ApiException(404, "SKU not found"));
+    }
+
+    private User authenticate(HttpExchange ex) {
+        String header = ex.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6))
+            throw new ApiException(401, "Authentication required");
+        String decoded;
+        try {
+            decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(401, "Bad credentials");
+        }
+        int colon = decoded.indexOf(':');
+        if (colon < 0) throw new ApiException(401, "Bad credentials");
+        Optional<User> user = store.authenticate(decoded.substring(0, colon), decoded.substring(colon + 1));
+        return user.orElseThrow(() -> new ApiException(401, "Bad credentials"));
+    }
+
+    private static void requireAdmin(User user) {
+        requireRole(user, Role.ADMIN);
+    }
+
+    private static void requireRole(User user, Role role) {
+        if (user.getRole() != role) throw new ApiException(403, "Requires role " + role);
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) throw new ApiException(405, "Method not allowed");
+    }
+
+    private static Map<String, Object> readObject(HttpExchange ex) throws IOException {
+        byte[] raw;
+        try (InputStream in = ex.getRequestBody()) {
+            raw = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (raw.length > MAX_BODY_BYTES) throw new ApiException(413, "Request body too large");
+        Object parsed = Json.parse(new String(raw, StandardCharsets.UTF_8));
+        if (!(parsed instanceof Map)) throw new IllegalArgumentException("Expected a JSON object");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) parsed;
+        return map;
+    }
+
+    private static void send(HttpExchange ex, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendText(HttpExchange ex, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String[] segments(String rawPath) {
+        List<String> out = new ArrayList<>();
+        for (String s : rawPath.split("/")) {
+            if (!s.isEmpty()) out.add(URLDecoder.decode(s, StandardCharsets.UTF_8));
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> out = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            String v = eq < 0 ? "" : pair.substring(eq + 1);
+            out.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static int limit(Map<String, String> query) {
+        String s = query.get("limit");
+        if (s == null) return DEFAULT_PAGE;
+        try {
+            int n = Integer.parseInt(s);
+            if (n <= 0 || n > MAX_PAGE) throw new IllegalArgumentException("limit must be 1.." + MAX_PAGE);
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("limit must be a number");
+        }
+    }
+
+    private static long longParam(Map<String, String> query, String name) {
+        String s = query.get(name);
+        if (s == null || s.isEmpty()) return 0;
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private static String requireString(Map<String, Object> in, String field) {
+        String s = optionalString(in, field);
+        if (s == null) throw new IllegalArgumentException(field + " required");
+        return s;
+    }
+
+    private static String optionalString(Map<String, Object> in, String field) {
+        Object v = in.get(field);
+        if (v == null) return null;
+        if (!(v instanceof String)) throw new IllegalArgumentException(field + " must be a string");
+        return (String) v;
+    }
+
+    private static OrderStatus status(String s) {
+        try {
+            return OrderStatus.valueOf(s.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown status: " + s);
+        }
+    }
+
+    // An ISO-8601 instant such as 2024-05-01T08:00:00Z, or null when the field is absent.
+    private static Instant instant(Map<String, Object> in, String field) {
+        String s = optionalString(in, field);
+        if (s == null) return null;
+        try {
+            return Instant.parse(s.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(field + " must be an ISO-8601 instant");
+        }
+    }
+
+    private static BigDecimal requireNumber(Map<String, Object> in, String field) {
+        Object v = in.get(field);
+        if (v instanceof BigDecimal) return (BigDecimal) v;
+        if (v instanceof String) {
+            try {
+                return new BigDecimal(((String) v).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(field + " must be a number");
+            }
+        }
+        throw new IllegalArgumentException(field + " required");
+    }
+
+    private static int intField(Map<String, Object> in, String field, int fallback) {
+        Object v = in.get(field);
+        return v == null ? fallback : toInt(v, field);
+    }
+
+    private static int toInt(Object v, String field) {
+        if (!(v instanceof BigDecimal)) throw new IllegalArgumentException(field + " must be a whole number");
+        try {
+            return ((BigDecimal) v).intValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(field + " must be a whole number");
+        }
+    }
+
+    private static <T> List<Object> list(List<T> items, Function<T, Object> view) {
+        List<Object> out = new ArrayList<>(items.size());
+        for (T t : items) out.add(view.apply(t));
+        return out;
+    }
+
+    private static Map<String, Object> page(List<Object> items, Object next) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("items", items);
+        out.put("next", next);
+        return out;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("error", message);
+        return out;
+    }
+
+    private static Object importResult(ImportResult r) {
+        List<Object> errors = new ArrayList<>();
+        for (ImportResult.RowError e : r.getErrors()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("line", e.getLine());
+            row.put("message", e.getMessage());
+            errors.add(row);
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("inserted", r.getInserted());
+        out.put("updated", r.getUpdated());
+        out.put("rejected", r.getRejected());
+        out.put("errors", errors);
+        return out;
+    }
+
+    private static Object sales(SalesAggregates sales, Map<String, String> query) {
+        Map<String, Object> byStatus = new LinkedHashMap<>();
+        for (Map.Entry<OrderStatus, Long> e : sales.getOrdersByStatus().entrySet()) byStatus.put(e.getKey().name(), e.getValue());
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("ordersByStatus", byStatus);
+        out.put("revenue", sales.getRevenue());
+        String sku = query.get("sku");
+        if (sku != null) {
+            out.put("sku", sku);
+            out.put("unitsSold", sales.getUnitsSold(sku));
+            out.put("skuRevenue", sales.getRevenue(sku));
+        }
+        String customer = query.get("customer");
+        if (customer != null) {
+            out.put("customer", customer);
+            out.put("customerSpend", sales.getCustomerSpend(customer));
+        }
+        return out;
+    }
+
+    private static Object bulkResult(BulkTransitionResult r) {
+        List<Object> rejected = new ArrayList<>();
+        for (BulkTransitionResult.Outcome o : r.getOutcomes()) {
+            if (o.isMoved()) continue;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", o.getOrderId());
+            row.put("error", o.getError());
+            rejected.add(row);
+        }
+        List<Object> moved = new ArrayList<>(r.getMoved());
+        for (BulkTransitionResult.Outcome o : r.getOutcomes()) if (o.isMoved()) moved.add(o.getOrderId());
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("from", r.getFrom().name());
+        out.put("to", r.getTo().name());
+        out.put("moved", moved);
+        out.put("rejected", rejected);
+        out.put("restockedUnits", r.getRestockedUnits());
+        return out;
+    }
+
+    private static Object product(Product p) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("sku", p.getSku());
+        out.put("name", p.getName());
+        out.put("price", p.getPrice());
+        out.put("stock", p.getStock());
+        out.put("lowStockThreshold", p.getLowStockThreshold());
+        out.put("lowStock", p.isLowStock());
+        return out;
+    }
+
+    private static Object order(Order o) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("id", o.getId());
+        out.put("customer", o.getCustomerUsername());
+        out.put("status", o.getStatus().name());
+        out.put("createdAt", o.getCreatedAt().toString());
+        out.put("total", o.total());
+        List<Object> items = new ArrayList<>(o.getItems().size());
+        for (OrderItem it : o.getItems()) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("sku", it.getSku());
+            line.put("name", it.getName());
+            line.put("unitPrice", it.getUnitPrice());
+            line.put("quantity", it.getQuantity());
+            line.put("lineTotal", it.lineTotal());
+            items.add(line);
+        }
+        out.put("items", items);
+        return out;
+    }
+
+    // Thrown out of the handler, without closing the exchange, once a response has started and can not be finished.
+    private static final class ResponseAborted extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ResponseAborted(Throwable cause) {
+            super("Response aborted", cause);
+        }
+    }
+
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.company.ims;
+
+import java.time.Duration;
+
+// Which finished (DELIVERED or CANCELLED) orders a Store moves from the heap to its on-disk archive. An order is
+// archived once it is older than maxAge (by createdAt), or once it is no longer among the newest maxHotOrders
+// orders still on the heap; either rule can be left off. Orders that can still change are never archived.
+public class ArchivePolicy {
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+    public static final Duration DEFAULT_SWEEP_INTERVAL = Duration.ofMinutes(1);
+
+    private final Duration maxAge;
+    private final int maxHotOrders;
+    private final int cacheSize;
+    private final Duration sweepInterval;
+
+    public ArchivePolicy(Duration maxAge, int maxHotOrders, int cacheSize, Duration sweepInterval) {
+        if (maxAge != null && maxAge.isNegative()) throw new IllegalArgumentException("Max age must be >= 0");
+        if (maxHotOrders < -1) throw new IllegalArgumentException("Max hot orders must be >= 0, or -1 for no limit");
+        if (maxAge == null && maxHotOrders < 0) throw new IllegalArgumentException("Give a max age, a max order count or both");
+        if (cacheSize < 0) throw new IllegalArgumentException("Cache size must be >= 0");
+        if (sweepInterval == null || sweepInterval.isZero() || sweepInterval.isNegative())
+            throw new IllegalArgumentException("Sweep interval must be > 0");
+
+        this.maxAge = maxAge;
+        this.maxHotOrders = maxHotOrders;
+        this.cacheSize = cacheSize;
+        this.sweepInterval = sweepInterval;
+    }
+
+    public static ArchivePolicy byAge(Duration maxAge) {
+        if (maxAge == null) throw new IllegalArgumentException("Max age required");
+        return new ArchivePolicy(maxAge, -1, DEFAULT_CACHE_SIZE, DEFAULT_SWEEP_INTERVAL);
+    }
+
+    public static ArchivePolicy byCount(int maxHotOrders) {
+        if (maxHotOrders < 0) throw new IllegalArgumentException("Max hot orders must be >= 0");
+        return new ArchivePolicy(null, maxHotOrders, DEFAULT_CACHE_SIZE, DEFAULT_SWEEP_INTERVAL);
+    }
+
+    public Duration getMaxAge() { return maxAge; }
+    public int getMaxHotOrders() { return maxHotOrders; }
+    public int getCacheSize() { return cacheSize; }
+    public Duration getSweepInterval() { return sweepInterval; }
+}
@@ -0,0 +1,65 @@
+package com.company.ims;
+
+import java.util.List;
+
+public class BulkTransitionResult {
+    private final OrderStatus from;
+    private final OrderStatus to;
+    private final List<Outcome> outcomes;
+    private final long restockedUnits;
+    private final int moved;
+
+    BulkTransitionResult(OrderStatus from, OrderStatus to, List<Outcome> outcomes, long restockedUnits) {
+        this.from = from;
+        this.to = to;
+        this.outcomes = List.copyOf(outcomes);
+        this.restockedUnits = restockedUnits;
+        int n = 0;
+        for (Outcome o : outcomes) if (o.isMoved()) n++;
+        this.moved = n;
+    }
+
+    static Outcome moved(long orderId) {
+        return new Outcome(orderId, null);
+    }
+
+    static Outcome rejected(long orderId, String error) {
+        return new Outcome(orderId, error);
+    }
+
+    public OrderStatus getFrom() { return from; }
+    public OrderStatus getTo() { return to; }
+    public int getMoved() { return moved; }
+    public int getRejected() { return outcomes.size() - moved; }
+    // Units put back into stock by the cancellations in the batch.
+    public long getRestockedUnits() { return restockedUnits; }
+
+    // One entry per selected order, oldest first.
+    public List<Outcome> getOutcomes() { return outcomes; }
+
+    @Override
+    public String toString() {
+        return from + " -> " + to + ": " + moved + " moved, " + getRejected() + " rejected"
+                + (restockedUnits > 0 ? ", " + restockedUnits + " units restocked" : "");
+    }
+
+    public static class Outcome {
+        private final long orderId;
+        private final String error;
+
+        Outcome(long orderId, String error) {
+            this.orderId = orderId;
+            this.error = error;
+        }
+
+        public long getOrderId() { return orderId; }
+        public boolean isMoved() { return error == null; }
+        // null when the order was moved.
+        public String getError() { return error; }
+
+        @Override
+        public String toString() {
+            return "order " + orderId + ": " + (error == null ? "moved" : error);
+        }
+    }
+}
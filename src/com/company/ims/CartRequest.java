@@ -0,0 +1,18 @@
+package com.company.ims;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CartRequest {
+    private final String username;
+    private final Map<String, Integer> items;
+
+    public CartRequest(String username, Map<String, Integer> items) {
+        this.username = username;
+        this.items = items == null ? Collections.emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(items));
+    }
+
+    public String getUsername() { return username; }
+    public Map<String, Integer> getItems() { return items; }
+}
@@ -0,0 +1,471 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Bulk CSV import and export for the catalog (RFC 4180 quoting, UTF-8). Imports are read on the calling thread,
+// cut into chunks at record boundaries and parsed on a pool of workers; at most two chunks per worker are queued,
+// so memory stays bounded however large the feed is. Each chunk goes into the store with one journal sync.
+public final class CatalogCsv {
+    public static final String PRODUCT_HEADER = "sku,name,price,stock,lowStockThreshold";
+    public static final String ORDER_HEADER = "orderId,customer,status,createdAt,sku,name,unitPrice,quantity,lineTotal";
+
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+    private static final int WRITE_BUFFER_BYTES = 64 << 10;
+
+    private CatalogCsv() { }
+
+    public static ImportResult importProducts(Store store, ReadableByteChannel in, boolean upsert) throws IOException {
+        return importProducts(store, in, upsert, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Without upsert an existing SKU is a rejected row; with it the row updates name, price and threshold and leaves
+    // stock alone. Rows for the same SKU in different chunks of one feed may be applied in either order.
+    public static ImportResult importProducts(Store store, ReadableByteChannel in, boolean upsert, int threads)
+            throws IOException {
+        if (store == null || in == null) throw new IllegalArgumentException("Store and input required");
+        if (threads <= 0) throw new IllegalArgumentException("Threads must be > 0");
+        return new Importer(store, upsert, threads).run(in);
+    }
+
+    // Both exports read one snapshot view, so a file is a single point in time however long it takes to write.
+    public static long exportProducts(Store store, WritableByteChannel out) throws IOException {
+        CsvWriter w = new CsvWriter(out);
+        w.raw(PRODUCT_HEADER).endRow();
+        long rows = 0;
+        try (StoreView view = store.snapshot()) {
+            for (Iterator<Product> it = view.streamProducts().iterator(); it.hasNext(); rows++) {
+                Product p = it.next();
+                w.field(p.getSku()).field(p.getName()).field(p.getPrice().toString())
+                        .field(Integer.toString(p.getStock())).field(Integer.toString(p.getLowStockThreshold())).endRow();
+            }
+        }
+        w.flush();
+        return rows;
+    }
+
+    // One row per order line; the order's own columns repeat on each of its lines.
+    public static long exportOrders(Store store, WritableByteChannel out) throws IOException {
+        CsvWriter w = new CsvWriter(out);
+        w.raw(ORDER_HEADER).endRow();
+        long rows = 0;
+        try (StoreView view = store.snapshot()) {
+            for (Iterator<Order> it = view.streamOrders(0).iterator(); it.hasNext(); ) {
+                Order o = it.next();
+                String id = Long.toString(o.getId());
+                String status = o.getStatus().name();
+                String createdAt = o.getCreatedAt().toString();
+                for (OrderItem item : o.getItems()) {
+                    w.field(id).field(o.getCustomerUsername()).field(status).field(createdAt)
+                            .field(item.getSku()).field(item.getName()).field(item.getUnitPrice().toString())
+                            .field(Integer.toString(item.getQuantity())).field(item.lineTotal().toString()).endRow();
+                    rows++;
+                }
+            }
+        }
+        w.flush();
+        return rows;
+    }
+
+    private static final class Chunk {
+        static final Chunk END = new Chunk(new byte[0], 0);
+
+        final byte[] data;
+        final long firstLine;
+
+        Chunk(byte[] data, long firstLine) {
+            this.data = data;
+            this.firstLine = firstLine;
+        }
+    }
+
+    private static final class Importer {
+        private final Store store;
+        private final boolean upsert;
+        private final int threads;
+        private final BlockingQueue<Chunk> queue;
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong updated = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final List<ImportResult.RowError> errors = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private Columns columns;
+
+        Importer(Store store, boolean upsert, int threads) {
+            this.store = store;
+            this.upsert = upsert;
+            this.threads = threads;
+            this.queue = new ArrayBlockingQueue<>(threads * 2);
+        }
+
+        ImportResult run(ReadableByteChannel in) throws IOException {
+            AtomicInteger n = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "ims-import-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            for (int i = 0; i < threads; i++) pool.execute(this::work);
+            try {
+                read(in);
+            } finally {
+                try {
+                    for (int i = 0; i < threads; i++) queue.put(Chunk.END);
+                    pool.shutdown();
+                    while (!pool.awaitTermination(1, TimeUnit.SECONDS)) { }
+                } catch (InterruptedException ex) {
+                    pool.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            Throwable t = failure.get();
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            if (t != null) throw new IOException("Import failed", t);
+            errors.sort(Comparator.comparingLong(ImportResult.RowError::getLine));
+            return new ImportResult(inserted.get(), updated.get(), rejected.get(), errors);
+        }
+
+        // Fills a buffer, cuts it after the last newline that is not inside quotes and hands that part to a worker.
+        private void read(ReadableByteChannel in) throws IOException {
+            byte[] buf = new byte[CHUNK_BYTES];
+            int len = 0;
+            long line = 1;
+            boolean eof = false;
+            while (!eof && failure.get() == null) {
+                while (len < buf.length) {
+                    int r = in.read(ByteBuffer.wrap(buf, len, buf.length - len));
+                    if (r < 0) {
+                        eof = true;
+                        break;
+                    }
+                    len += r;
+                }
+
+                int cut = eof ? len : lastRecordEnd(buf, len);
+                if (cut <= 0 && !eof) {
+                    if (buf.length >= MAX_RECORD_BYTES) throw new IllegalArgumentException("Line " + line + ": record too long");
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    continue;
+                }
+
+                int start = 0;
+                if (columns == null) {
+                    int headerEnd = firstRecordEnd(buf, cut);
+                    if (headerEnd == 0) throw new IllegalArgumentException("Catalog file is empty");
+                    columns = Columns.parse(new String(buf, 0, headerEnd, StandardCharsets.UTF_8));
+                    start = headerEnd;
+                    line++;
+                }
+                if (cut > start) {
+                    put(new Chunk(Arrays.copyOfRange(buf, start, cut), line));
+                    line += countNewlines(buf, start, cut);
+                }
+                System.arraycopy(buf, cut, buf, 0, len - cut);
+                len -= cut;
+            }
+        }
+
+        private void put(Chunk c) throws IOException {
+            try {
+                queue.put(c);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            }
+        }
+
+        private void work() {
+            while (true) {
+                Chunk c;
+                try {
+                    c = queue.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (c == Chunk.END) return;
+                // After a failure keep draining so the reader never blocks on a full queue.
+                if (failure.get() != null) continue;
+                try {
+                    apply(c);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        }
+
+        private void apply(Chunk c) {
+            List<Product> rows = new ArrayList<>();
+            List<Long> rowLines = new ArrayList<>();
+            CsvReader reader = new CsvReader(new String(c.data, StandardCharsets.UTF_8), c.firstLine);
+            List<String> fields = new ArrayList<>();
+            while (reader.next(fields)) {
+                if (fields.size() == 1 && fields.get(0).isEmpty()) continue;
+                try {
+                    rows.add(columns.product(fields));
+                    rowLines.add(reader.recordLine());
+                } catch (IllegalArgumentException ex) {
+                    reject(reader.recordLine(), ex.getMessage());
+                }
+            }
+            if (reader.error() != null) reject(reader.recordLine(), reader.error());
+            if (rows.isEmpty()) return;
+
+            boolean[] changed = new boolean[rows.size()];
+            String[] rowErrors = store.putProducts(rows, upsert, changed);
+            for (int i = 0; i < rowErrors.length; i++) {
+                if (rowErrors[i] != null) reject(rowLines.get(i), rowErrors[i]);
+                else if (changed[i]) updated.incrementAndGet();
+                else inserted.incrementAndGet();
+            }
+        }
+
+        private void reject(long line, String message) {
+            rejected.incrementAndGet();
+            synchronized (errors) {
+                if (errors.size() < ImportResult.MAX_REPORTED_ERRORS) errors.add(new ImportResult.RowError(line, message));
+            }
+        }
+    }
+
+    private static int lastRecordEnd(byte[] buf, int len) {
+        boolean quoted = false;
+        int end = 0;
+        for (int i = 0; i < len; i++) {
+            byte b = buf[i];
+            if (b == '"') quoted = !quoted;
+            else if (b == '\n' && !quoted) end = i + 1;
+        }
+        return end;
+    }
+
+    private static int firstRecordEnd(byte[] buf, int len) {
+        boolean quoted = false;
+        for (int i = 0; i < len; i++) {
+            byte b = buf[i];
+            if (b == '"') quoted = !quoted;
+            else if (b == '\n' && !quoted) return i + 1;
+        }
+        return len;
+    }
+
+    private static long countNewlines(byte[] buf, int from, int to) {
+        long n = 0;
+        for (int i = from; i < to; i++) if (buf[i] == '\n') n++;
+        return n;
+    }
+
+    // Where each product column sits in the feed; the header may list them in any order and add others.
+    private static final class Columns {
+        final int sku;
+        final int name;
+        final int price;
+        final int stock;
+        final int threshold;
+        final int needed;
+
+        private Columns(int sku, int name, int price, int stock, int threshold) {
+            this.sku = sku;
+            this.name = name;
+            this.price = price;
+            this.stock = stock;
+            this.threshold = threshold;
+            this.needed = Math.max(Math.max(sku, name), Math.max(price, Math.max(stock, threshold))) + 1;
+        }
+
+        static Columns parse(String headerLine) {
+            if (headerLine.startsWith("\uFEFF")) headerLine = headerLine.substring(1);
+            List<String> names = new ArrayList<>();
+            CsvReader r = new CsvReader(headerLine, 1);
+            if (!r.next(names) || r.error() != null) throw new IllegalArgumentException("Line 1: bad header");
+            int sku = -1, name = -1, price = -1, stock = -1, threshold = -1;
+            for (int i = 0; i < names.size(); i++) {
+                switch (names.get(i).trim().toLowerCase(Locale.ROOT)) {
+                    case "sku" -> sku = i;
+                    case "name" -> name = i;
+                    case "price" -> price = i;
+                    case "stock" -> stock = i;
+                    case "lowstockthreshold" -> threshold = i;
+                    default -> { }
+                }
+            }
+            if (sku < 0 || name < 0 || price < 0)
+                throw new IllegalArgumentException("Line 1: header must name the sku, name and price columns");
+            return new Columns(sku, name, price, stock, threshold);
+        }
+
+        Product product(List<String> f) {
+            if (f.size() < needed) throw new IllegalArgumentException("Expected " + needed + " columns, found " + f.size());
+            return new Product(f.get(sku), f.get(name), money(f.get(price)), whole(f, stock, "stock"),
+                    whole(f, threshold, "lowStockThreshold"));
+        }
+
+        private static Money money(String s) {
+            try {
+                return Money.of(new BigDecimal(s.trim()));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad price: " + s);
+            }
+        }
+
+        private static int whole(List<String> f, int column, String label) {
+            if (column < 0) return 0;
+            String s = f.get(column).trim();
+            if (s.isEmpty()) return 0;
+            try {
+                return Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad " + label + ": " + s);
+            }
+        }
+    }
+
+    // RFC 4180 records from a chunk of text, tracking the physical line each record starts on.
+    private static final class CsvReader {
+        private final String text;
+        private int pos;
+        private long line;
+        private long recordLine;
+        private String error;
+
+        CsvReader(String text, long firstLine) {
+            this.text = text;
+            this.line = firstLine;
+        }
+
+        long recordLine() { return recordLine; }
+        String error() { return error; }
+
+        boolean next(List<String> fields) {
+            fields.clear();
+            if (pos >= text.length() || error != null) return false;
+            recordLine = line;
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (quoted) {
+                    if (c == '"') {
+                        if (pos < text.length() && text.charAt(pos) == '"') {
+                            field.append('"');
+                            pos++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append(c);
+                    }
+                } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    wasQuoted = false;
+                } else if (c == '\n') {
+                    line++;
+                    break;
+                } else if (c != '\r' || (pos < text.length() && text.charAt(pos) != '\n')) {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                error = "Unterminated quoted field";
+                return false;
+            }
+            fields.add(field.toString());
+            return true;
+        }
+    }
+
+    private static final class CsvWriter {
+        private final WritableByteChannel out;
+        private final ByteBuffer buf = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+        private final StringBuilder row = new StringBuilder(256);
+        private boolean first = true;
+
+        CsvWriter(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        CsvWriter raw(String s) {
+            row.append(s);
+            first = false;
+            return this;
+        }
+
+        CsvWriter field(String s) {
+            if (!first) row.append(',');
+            first = false;
+            if (needsQuotes(s)) {
+                row.append('"');
+                for (int i = 0; i < s.length(); i++) {
+                    char c = s.charAt(i);
+                    if (c == '"') row.append('"');
+                    row.append(c);
+                }
+                row.append('"');
+            } else {
+                row.append(s);
+            }
+            return this;
+        }
+
+        void endRow() throws IOException {
+            row.append('\n');
+            byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+            row.setLength(0);
+            first = true;
+            if (buf.remaining() < bytes.length) drain();
+            if (bytes.length > buf.capacity()) {
+                ByteBuffer big = ByteBuffer.wrap(bytes);
+                while (big.hasRemaining()) out.write(big);
+                return;
+            }
+            buf.put(bytes);
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+            buf.clear();
+        }
+
+        private static boolean needsQuotes(String s) {
+            if (s.isEmpty()) return false;
+            if (Character.isWhitespace(s.charAt(0)) || Character.isWhitespace(s.charAt(s.length() - 1))) return true;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.company.ims;
+
+// The one observer a Store attaches to each of its products. It passes each change on to the index that follows it:
+// stock and thresholds to the low-stock index, names to the search index.
+final class CatalogObserver implements ProductObserver {
+    private final LowStockIndex lowStock;
+    private final ProductSearchIndex search;
+
+    CatalogObserver(LowStockIndex lowStock, ProductSearchIndex search) {
+        this.lowStock = lowStock;
+        this.search = search;
+    }
+
+    // p is bound in the SkuTable already; attached first, so a change from here on reaches both indexes.
+    void track(Product p) {
+        p.attach(this);
+        lowStock.reevaluate(p);
+        search.reindex(p);
+    }
+
+    // p is unbound from the SkuTable already.
+    void untrack(Product p) {
+        p.detach(this);
+        lowStock.reevaluate(p);
+        search.reindex(p);
+    }
+
+    @Override
+    public void stockChanged(Product p, int before, int after) {
+        lowStock.stockChanged(p, before, after);
+    }
+
+    @Override
+    public void thresholdChanged(Product p) {
+        lowStock.reevaluate(p);
+    }
+
+    @Override
+    public void nameChanged(Product p) {
+        search.reindex(p);
+    }
+}
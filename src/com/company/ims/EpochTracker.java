@@ -0,0 +1,52 @@
+package com.company.ims;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Lets one coordinator wait for every operation that was already running when it asked, without blocking new ones.
+final class EpochTracker {
+    private static final int PAD = 16;
+
+    private final int stripes;
+    private final AtomicLongArray active;
+    private volatile long epoch;
+
+    EpochTracker() {
+        int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4) - 1) << 1;
+        this.stripes = Math.max(1, n);
+        this.active = new AtomicLongArray(2 * stripes * PAD);
+    }
+
+    long enter() {
+        int stripe = stripe();
+        while (true) {
+            long e = epoch;
+            int slot = slot(e, stripe);
+            active.getAndIncrement(slot);
+            if (epoch == e) return (e << 32) | stripe;
+            active.getAndDecrement(slot);
+        }
+    }
+
+    void exit(long token) {
+        active.getAndDecrement(slot(token >>> 32, (int) token));
+    }
+
+    // Single caller at a time.
+    void awaitPrior() {
+        long old = epoch;
+        epoch = old + 1;
+        for (int s = 0; s < stripes; s++) {
+            int slot = slot(old, s);
+            while (active.get(slot) != 0) LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private int stripe() {
+        return (int) (Thread.currentThread().getId() & (stripes - 1));
+    }
+
+    private int slot(long e, int stripe) {
+        return ((int) (e & 1) * stripes + stripe) * PAD;
+    }
+}
@@ -0,0 +1,45 @@
+package com.company.ims;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// Runs body for every index in [0, n) on a fork-join pool, splitting the range in halves until a piece is at most
+// grain long. Idle workers steal the other halves, so uneven pieces even out across the cores. Uses the caller's pool
+// when called from a fork-join worker, the common pool otherwise.
+final class ForkJoinRange extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int grain;
+    private final IntConsumer body;
+
+    private ForkJoinRange(int from, int to, int grain, IntConsumer body) {
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+        this.body = body;
+    }
+
+    static void run(int n, int grain, IntConsumer body) {
+        if (n <= grain) {
+            for (int i = 0; i < n; i++) body.accept(i);
+            return;
+        }
+        ForkJoinRange all = new ForkJoinRange(0, n, Math.max(1, grain), body);
+        if (ForkJoinTask.inForkJoinPool()) all.invoke();
+        else ForkJoinPool.commonPool().invoke(all);
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            for (int i = from; i < to; i++) body.accept(i);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new ForkJoinRange(from, mid, grain, body), new ForkJoinRange(mid, to, grain, body));
+    }
+}
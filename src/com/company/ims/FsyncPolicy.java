@@ -0,0 +1,10 @@
+package com.company.ims;
+
+public enum FsyncPolicy {
+    // Callers wait until their record is on disk; everyone waiting at the same time shares one fsync.
+    ALWAYS,
+    // A background fsync at most every sync interval; callers only wait for the in-memory append.
+    PERIODIC,
+    // Records reach the OS page cache and the OS decides when they hit the disk.
+    NEVER
+}
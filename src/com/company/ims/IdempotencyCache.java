@@ -0,0 +1,118 @@
+package com.company.ims;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Recent idempotency keys per customer and the order each one placed. The first request with a key claims it and
+// places the order; retries that arrive meanwhile wait for that result instead of placing their own, and later ones
+// get it straight from the map. Keys are per customer as the order records them, so usernames are trimmed. Keys
+// expire ttl after they were claimed, and the oldest finished ones go first once there are more than maxKeys; a claim
+// whose order is still being placed is never dropped, so the cache only exceeds maxKeys by the placements in flight.
+final class IdempotencyCache {
+    static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+    static final int DEFAULT_MAX_KEYS = 100_000;
+
+    private static final class Claim {
+        final String key;
+        // Normalized (trimmed SKUs in order, merged quantities), so a retry's cart is equal to it.
+        final Map<String, Integer> cart;
+        final long expiresAt;
+        final CompletableFuture<Order> result = new CompletableFuture<>();
+
+        Claim(String key, Map<String, Integer> cart, long expiresAt) {
+            this.key = key;
+            this.cart = cart;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Claim> claims = new ConcurrentHashMap<>();
+    // Claims in the order they were made, which with one ttl for all is also the order they expire in.
+    private final ConcurrentLinkedQueue<Claim> byAge = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final long ttlNanos;
+    private final int maxKeys;
+
+    IdempotencyCache(long ttlMillis, int maxKeys) {
+        if (ttlMillis <= 0) throw new IllegalArgumentException("Idempotency window must be > 0");
+        if (maxKeys <= 0) throw new IllegalArgumentException("Max keys must be > 0");
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.maxKeys = maxKeys;
+    }
+
+    long ttlMillis() {
+        return ttlNanos / 1_000_000;
+    }
+
+    int maxKeys() {
+        return maxKeys;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    // The order placed for this key: by placer, if this request is the first with it (or the last one failed), or
+    // else the one placed by the request that was, waiting for it if it is still running.
+    Order place(String username, String key, Map<String, Integer> cart, Supplier<Order> placer) {
+        String k = username.trim() + '\n' + key;
+        long now = System.nanoTime();
+        Claim mine;
+        while (true) {
+            Claim c = claims.get(k);
+            // One still being placed is waited for even past its ttl, or the retry would place the order again.
+            if (c != null && (c.expiresAt - now > 0 || !c.result.isDone())) {
+                if (!c.cart.equals(cart)) throw new IllegalStateException("Idempotency key was used for a different cart");
+                return await(c);
+            }
+            mine = new Claim(k, cart, now + ttlNanos);
+            if (c == null ? claims.putIfAbsent(k, mine) == null : claims.replace(k, c, mine)) {
+                if (c == null) size.incrementAndGet();
+                break;
+            }
+        }
+        byAge.add(mine);
+
+        Order o;
+        try {
+            o = placer.get();
+        } catch (RuntimeException | Error ex) {
+            // Retries already waiting get the same error; the key is released so a later one places the order afresh.
+            if (claims.remove(k, mine)) size.decrementAndGet();
+            mine.result.completeExceptionally(ex);
+            throw ex;
+        }
+        mine.result.complete(o);
+        evict(System.nanoTime());
+        return o;
+    }
+
+    private static Order await(Claim c) {
+        try {
+            return c.result.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw ex;
+        }
+    }
+
+    // Drops expired claims, then the oldest while over maxKeys, walking from the oldest. A claim still being placed is
+    // stepped over and left where it is, so one slow placement does not hold back the finished claims behind it.
+    // Claims already replaced or failed just leave the queue.
+    private void evict(long now) {
+        for (Iterator<Claim> it = byAge.iterator(); it.hasNext(); ) {
+            Claim c = it.next();
+            if (!c.result.isDone()) continue;
+            if (c.expiresAt - now > 0 && size.get() <= maxKeys) return;
+            it.remove();
+            if (claims.remove(c.key, c)) size.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.company.ims;
+
+import java.util.List;
+
+public class ImportResult {
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final long inserted;
+    private final long updated;
+    private final long rejected;
+    private final List<RowError> errors;
+
+    ImportResult(long inserted, long updated, long rejected, List<RowError> errors) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.rejected = rejected;
+        this.errors = List.copyOf(errors);
+    }
+
+    public long getInserted() { return inserted; }
+    public long getUpdated() { return updated; }
+    public long getRejected() { return rejected; }
+
+    // Up to the first thousand rejected rows, sorted by line; getRejected() has the full count.
+    public List<RowError> getErrors() { return errors; }
+
+    public static class RowError {
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() { return line; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+}
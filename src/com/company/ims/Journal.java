@@ -0,0 +1,358 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+final class Journal implements AutoCloseable {
+    private static final int MAGIC = 0x494D534A; // "IMSJ"
+    private static final int FORMAT_VERSION = 3;
+    private static final int FILE_HEADER_BYTES = 16;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+    private static final int MAX_PENDING_BYTES = 64 << 20;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+    private final FsyncPolicy policy;
+    private final long syncIntervalNanos;
+    private final Thread flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private final Condition progressed = lock.newCondition();
+    private FileChannel channel;
+    private long segment;
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 20);
+    private ByteBuffer inFlight = ByteBuffer.allocate(1 << 20);
+    // Process-local byte counters across all segments; only ever compared with each other.
+    private long appended;
+    private long written;
+    private long durable;
+    private boolean rotating;
+    private boolean closed;
+    private IOException failure;
+
+    private Journal(Path dir, FileChannel channel, long segment, FsyncPolicy policy, long syncIntervalMillis) {
+        this.dir = dir;
+        this.channel = channel;
+        this.segment = segment;
+        this.policy = policy;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.flusher = new Thread(this::flushLoop, "ims-journal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    // Replays every segment numbered firstSegment or later, then keeps appending to the newest one.
+    static Journal open(Path dir, FsyncPolicy policy, long syncIntervalMillis, long firstSegment,
+                        Consumer<RecordInput> replay) throws IOException {
+        if (policy == null) throw new IllegalArgumentException("Fsync policy required");
+        if (syncIntervalMillis <= 0) throw new IllegalArgumentException("Sync interval must be > 0");
+        Files.createDirectories(dir);
+
+        List<Long> segments = segments(dir);
+        segments.removeIf(s -> s < firstSegment);
+
+        FileChannel ch = null;
+        long current = Math.max(firstSegment, 1);
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                long seg = segments.get(i);
+                boolean last = i == segments.size() - 1;
+                FileChannel segCh = FileChannel.open(segmentPath(dir, seg), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    long end = replay(segCh, seg, replay);
+                    if (end < segCh.size()) {
+                        if (!last) throw new IOException("Corrupt journal segment " + seg);
+                        segCh.truncate(end);
+                    }
+                    segCh.position(end);
+                } catch (IOException | RuntimeException ex) {
+                    segCh.close();
+                    throw ex;
+                }
+                if (last) {
+                    ch = segCh;
+                    current = seg;
+                } else {
+                    segCh.close();
+                }
+            }
+            if (ch == null) ch = createSegment(dir, current);
+
+            Journal j = new Journal(dir, ch, current, policy, syncIntervalMillis);
+            j.flusher.start();
+            return j;
+        } catch (IOException | RuntimeException ex) {
+            if (ch != null) ch.close();
+            throw ex;
+        }
+    }
+
+    static List<Long> segments(Path dir) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : ds) {
+                String n = p.getFileName().toString();
+                try {
+                    out.add(Long.parseLong(n.substring(SEGMENT_PREFIX.length(), n.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        out.sort(null);
+        return out;
+    }
+
+    private static Path segmentPath(Path dir, long segment) {
+        return dir.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static FileChannel createSegment(Path dir, long segment) throws IOException {
+        FileChannel ch = FileChannel.open(segmentPath(dir, segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(FORMAT_VERSION).putLong(segment).flip();
+        while (header.hasRemaining()) ch.write(header);
+        ch.force(true);
+        return ch;
+    }
+
+    // Returns the offset just past the last intact frame; a torn or corrupt tail is left for the caller to cut off.
+    private static long replay(FileChannel ch, long segment, Consumer<RecordInput> sink) throws IOException {
+        long size = ch.size();
+        if (size < FILE_HEADER_BYTES) throw new IOException("Truncated journal segment " + segment);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        readFully(ch, header, 0);
+        if (header.getInt() != MAGIC) throw new IOException("Not a store journal: segment " + segment);
+        int version = header.getInt();
+        if (version != FORMAT_VERSION) throw new IOException("Unsupported journal version: " + version);
+        if (header.getLong() != segment) throw new IOException("Journal segment number mismatch: " + segment);
+
+        long pos = FILE_HEADER_BYTES;
+        ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+        ByteBuffer body = ByteBuffer.allocate(64 << 10);
+        CRC32C crc = new CRC32C();
+
+        while (pos + FRAME_HEADER_BYTES <= size) {
+            frameHeader.clear();
+            readFully(ch, frameHeader, pos);
+            int len = frameHeader.getInt(0);
+            int expectedCrc = frameHeader.getInt(4);
+            if (len <= 0 || len > MAX_RECORD_BYTES || pos + FRAME_HEADER_BYTES + len > size) break;
+
+            if (body.capacity() < len) body = ByteBuffer.allocate(Math.max(len, body.capacity() * 2));
+            body.clear().limit(len);
+            readFully(ch, body, pos + FRAME_HEADER_BYTES);
+            crc.reset();
+            crc.update(body.array(), 0, len);
+            if ((int) crc.getValue() != expectedCrc) break;
+
+            sink.accept(new RecordInput(body));
+            pos += FRAME_HEADER_BYTES + len;
+        }
+        return pos;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos);
+            if (n < 0) throw new IOException("Unexpected end of journal");
+            pos += n;
+        }
+        dst.flip();
+    }
+
+    FsyncPolicy policy() { return policy; }
+
+    long append(RecordOutput rec) {
+        int len = rec.length();
+        if (len == 0 || len > MAX_RECORD_BYTES) throw new IllegalArgumentException("Bad record size: " + len);
+        int crc = rec.crc();
+        int frame = FRAME_HEADER_BYTES + len;
+
+        lock.lock();
+        try {
+            while ((rotating || pending.position() > MAX_PENDING_BYTES) && !closed && failure == null) progressed.awaitUninterruptibly();
+            checkUsable();
+
+            if (pending.remaining() < frame) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + frame));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            pending.putInt(len).putInt(crc);
+            rec.copyTo(pending);
+            appended += frame;
+            hasWork.signal();
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until everything up to the given append position is durable; a no-op unless the policy is ALWAYS.
+    void awaitDurable(long position) {
+        if (policy != FsyncPolicy.ALWAYS) return;
+        lock.lock();
+        try {
+            while (durable < position && failure == null) progressed.awaitUninterruptibly();
+            if (durable < position) throw new UncheckedIOException("Journal write failed", failure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes and fsyncs everything appended so far, whatever the policy.
+    void syncAll() throws IOException {
+        lock.lock();
+        try {
+            long target = appended;
+            while (written < target && failure == null) progressed.awaitUninterruptibly();
+            if (failure != null) throw failure;
+            if (durable < target) {
+                channel.force(false);
+                durable = target;
+                progressed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Starts a new segment and returns its number. Records appended before the call end up in older segments,
+    // later ones in the new segment; appenders only wait while the last batch drains and the file is switched.
+    long rotate() throws IOException {
+        lock.lock();
+        try {
+            while (rotating) progressed.awaitUninterruptibly();
+            checkUsable();
+            rotating = true;
+            try {
+                long target = appended;
+                while (written < target && failure == null) progressed.awaitUninterruptibly();
+                if (failure != null) throw failure;
+
+                FileChannel next = createSegment(dir, segment + 1);
+                channel.force(false);
+                channel.close();
+                channel = next;
+                segment++;
+                durable = target;
+                return segment;
+            } finally {
+                rotating = false;
+                progressed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void deleteSegmentsBefore(long firstKept) throws IOException {
+        for (long seg : segments(dir)) {
+            if (seg < firstKept) Files.deleteIfExists(segmentPath(dir, seg));
+        }
+    }
+
+    private void checkUsable() {
+        if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+        if (closed) throw new IllegalStateException("Journal is closed");
+    }
+
+    private void flushLoop() {
+        long lastSync = System.nanoTime();
+        while (true) {
+            long target;
+            FileChannel ch;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed && !(written > durable && periodicSyncDue(lastSync))) {
+                    if (policy == FsyncPolicy.PERIODIC && written > durable) hasWork.awaitNanos(syncIntervalNanos);
+                    else hasWork.awaitUninterruptibly();
+                }
+                if (pending.position() == 0 && closed) return;
+
+                ByteBuffer swap = inFlight;
+                inFlight = pending;
+                pending = swap;
+                target = appended;
+                ch = channel;
+            } catch (InterruptedException ex) {
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            // rotate() waits for written to catch up before it swaps files, so ch stays open for this round.
+            boolean synced = false;
+            try {
+                inFlight.flip();
+                while (inFlight.hasRemaining()) ch.write(inFlight);
+                inFlight.clear();
+                if (policy == FsyncPolicy.ALWAYS || periodicSyncDue(lastSync)) {
+                    ch.force(false);
+                    lastSync = System.nanoTime();
+                    synced = true;
+                }
+            } catch (IOException ex) {
+                lock.lock();
+                try {
+                    failure = ex;
+                    progressed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                written = target;
+                if (synced) durable = Math.max(durable, target);
+                progressed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean periodicSyncDue(long lastSync) {
+        return policy == FsyncPolicy.PERIODIC && System.nanoTime() - lastSync >= syncIntervalNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (failure == null) channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A shard backed by a Store in this process.
+final class LocalShard implements StoreShard {
+    private final Store store;
+    private final ConcurrentHashMap<Long, ShardReservation> held = new ConcurrentHashMap<>();
+    private final AtomicLong nextReservation = new AtomicLong(1);
+
+    LocalShard(Store store) {
+        this.store = store;
+    }
+
+    Store store() {
+        return store;
+    }
+
+    @Override
+    public Optional<Product> findProduct(String sku) {
+        return store.findProduct(sku);
+    }
+
+    @Override
+    public Collection<Product> listProducts() {
+        return store.listProducts();
+    }
+
+    @Override
+    public void addProduct(Product p) {
+        store.addProduct(p);
+    }
+
+    @Override
+    public int restock(String sku, int qty) {
+        return store.restock(sku, qty);
+    }
+
+    @Override
+    public Order placeOrder(String username, Map<String, Integer> cart) {
+        return store.placeOrder(username, cart);
+    }
+
+    @Override
+    public ShardReservation prepare(Map<String, Integer> lines) {
+        long[] words = new long[lines.size()];
+        List<OrderItem> items = store.reserve(lines, words);
+        ShardReservation r = new ShardReservation(nextReservation.getAndIncrement(), items, words);
+        held.put(r.getId(), r);
+        return r;
+    }
+
+    @Override
+    public void commit(ShardReservation reservation) {
+        if (held.remove(reservation.getId()) == null)
+            throw new IllegalStateException("Reservation not held: " + reservation.getId());
+    }
+
+    @Override
+    public void abort(ShardReservation reservation) {
+        if (held.remove(reservation.getId()) != null) store.release(reservation.quantities());
+    }
+
+    @Override
+    public Order recordOrder(String username, List<ShardReservation> reservations) {
+        List<OrderItem> items = new ArrayList<>();
+        List<Long> words = new ArrayList<>();
+        for (ShardReservation r : reservations) {
+            for (int i = 0; i < r.getItems().size(); i++) {
+                items.add(r.getItems().get(i));
+                words.add(r.word(i));
+            }
+        }
+        // Lines in SKU order, as for an order placed on one store.
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing(i -> items.get(i).getSku()));
+        List<OrderItem> sorted = new ArrayList<>(order.length);
+        long[] sortedWords = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted.add(items.get(order[i]));
+            sortedWords[i] = words.get(order[i]);
+        }
+        return store.recordOrder(username, sorted, sortedWords);
+    }
+
+    @Override
+    public void release(Map<String, Integer> lines) {
+        store.release(lines);
+    }
+
+    @Override
+    public Optional<Order> findOrder(long id) {
+        return store.findOrder(id);
+    }
+
+    @Override
+    public List<Order> listOrdersForUser(String username) {
+        return store.listOrdersForUser(username);
+    }
+
+    @Override
+    public void cancelOrderAsCustomer(String username, long orderId) {
+        store.cancelOrderAsCustomer(username, orderId);
+    }
+
+    @Override
+    public void updateOrderStatusAsAdmin(long orderId, OrderStatus newStatus) {
+        store.updateOrderStatusAsAdmin(orderId, newStatus);
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
@@ -0,0 +1,56 @@
+package com.company.ims;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Fed by the store's CatalogObserver. A product counts while it is the live one for its SKU in the SkuTable.
+final class LowStockIndex {
+    private final ConcurrentSkipListMap<String, Product> lowBySku = new ConcurrentSkipListMap<>();
+    private final CopyOnWriteArrayList<LowStockListener> listeners = new CopyOnWriteArrayList<>();
+    private final SkuTable skuTable;
+
+    LowStockIndex(SkuTable skuTable) {
+        this.skuTable = skuTable;
+    }
+
+    List<Product> snapshot() {
+        return new ArrayList<>(lowBySku.values());
+    }
+
+    void addListener(LowStockListener l) {
+        if (l == null) throw new IllegalArgumentException("Listener required");
+        listeners.add(l);
+    }
+
+    void removeListener(LowStockListener l) {
+        listeners.remove(l);
+    }
+
+    // The threshold is read after the stock CAS, so whichever change last flips the low/ok state always
+    // reaches reevaluate; changes that stay on one side of the threshold cost two volatile reads.
+    void stockChanged(Product p, int before, int after) {
+        int threshold = p.getLowStockThreshold();
+        if ((before <= threshold) != (after <= threshold)) reevaluate(p);
+    }
+
+    void reevaluate(Product p) {
+        synchronized (p) {
+            boolean low = skuTable.product(p.skuId()) == p && p.isLowStock();
+            boolean changed = low
+                    ? lowBySku.put(p.getSku(), p) == null
+                    : lowBySku.remove(p.getSku(), p);
+            if (!changed) return;
+
+            for (LowStockListener l : listeners) {
+                try {
+                    l.onLowStockChange(p, low);
+                } catch (RuntimeException ex) {
+                    Thread t = Thread.currentThread();
+                    t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.company.ims;
+
+public interface LowStockListener {
+    void onLowStockChange(Product product, boolean nowLow);
+}
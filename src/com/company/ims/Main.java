@@ -1,20 +1,102 @@
 package com.company.ims;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
 
 public class Main {
     private static final Scanner in = new Scanner(System.in);
+    private static final int PAGE_SIZE = 20;
+
+    // Usage: Main [--http <port>] [--import <catalog.csv> [--upsert]] [--payment-ttl <seconds>] [--archive-days <n>]
+    // [data directory]. With --http the store is served as a JSON API instead of the menus; --import loads a product
+    // CSV before either starts; --payment-ttl cancels orders still unpaid that long after they were placed;
+    // --archive-days moves finished orders older than that off the heap into the data directory's archive.
+    public static void main(String[] args) throws IOException {
+        Integer httpPort = null;
+        Path dataDir = null;
+        Path importFile = null;
+        boolean upsert = false;
+        Duration paymentTtl = null;
+        Integer archiveDays = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--http") && i + 1 < args.length) httpPort = Integer.valueOf(args[++i]);
+            else if (args[i].equals("--import") && i + 1 < args.length) importFile = Path.of(args[++i]);
+            else if (args[i].equals("--upsert")) upsert = true;
+            else if (args[i].equals("--payment-ttl") && i + 1 < args.length) paymentTtl = Duration.ofSeconds(Long.parseLong(args[++i]));
+            else if (args[i].equals("--archive-days") && i + 1 < args.length) archiveDays = Integer.valueOf(args[++i]);
+            else dataDir = Path.of(args[i]);
+        }
 
-    public static void main(String[] args) {
-        Store store = new Store();
+        try (Store store = dataDir != null ? Store.open(dataDir, FsyncPolicy.ALWAYS) : new Store()) {
+            store.metrics().registerMBeans(dataDir != null ? dataDir.toString() : "in-memory");
+            if (importFile != null) importCatalog(store, importFile, upsert);
+            store.setPaymentTimeout(paymentTtl);
+            if (archiveDays != null) store.setArchivePolicy(ArchivePolicy.byAge(Duration.ofDays(archiveDays)));
+            if (httpPort != null) {
+                serve(store, httpPort);
+                return;
+            }
+            while (true) {
+                User user = login(store);
+                if (user == null) return;
 
-        while (true) {
-            User user = login(store);
-            if (user == null) return;
+                if (user.getRole() == Role.ADMIN) adminLoop(store, user);
+                else userLoop(store, user);
+            }
+        }
+    }
 
-            if (user.getRole() == Role.ADMIN) adminLoop(store, user);
-            else userLoop(store, user);
+    private static void importCatalog(Store store, Path file, boolean upsert) throws IOException {
+        long t0 = System.nanoTime();
+        ImportResult r;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            r = CatalogCsv.importProducts(store, ch, upsert);
+        }
+        System.out.printf("Imported %s in %d ms: %d added, %d updated, %d rejected%n", file,
+                (System.nanoTime() - t0) / 1_000_000, r.getInserted(), r.getUpdated(), r.getRejected());
+        int shown = 0;
+        for (ImportResult.RowError e : r.getErrors()) {
+            if (shown++ == PAGE_SIZE) {
+                System.out.println("  ...");
+                break;
+            }
+            System.out.println("  " + e);
+        }
+    }
+
+    // Runs until the JVM is asked to stop, then closes the server before the store so in-flight requests finish first.
+    private static void serve(Store store, int port) throws IOException {
+        CountDownLatch stop = new CountDownLatch(1);
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop.countDown();
+            try {
+                main.join();
+            } catch (InterruptedException ignored) {
+            }
+        }));
+
+        try (ApiServer server = ApiServer.start(store, new InetSocketAddress(port))) {
+            System.out.println("Serving JSON API on http://localhost:" + server.port() + "/ (Ctrl+C to stop)");
+            while (true) {
+                try {
+                    stop.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                }
+            }
         }
     }
 
@@ -46,7 +128,9 @@ public class Main {
             System.out.println("6) Low-stock alerts");
             System.out.println("7) List all orders");
             System.out.println("8) Update order status");
-            System.out.println("9) Logout");
+            System.out.println("9) Move orders in bulk");
+            System.out.println("10) Reprice catalog");
+            System.out.println("11) Logout");
             System.out.print("Choose: ");
 
             String pick = in.nextLine().trim();
@@ -61,7 +145,9 @@ public class Main {
                     case "6" -> lowStock(store);
                     case "7" -> listAllOrders(store);
                     case "8" -> updateOrderStatus(store);
-                    case "9" -> { return; }
+                    case "9" -> bulkUpdateOrderStatus(store);
+                    case "10" -> repriceCatalog(store);
+                    case "11" -> { return; }
                     default -> System.out.println("Unknown option.");
                 }
             } catch (Exception ex) {
@@ -78,7 +164,8 @@ public class Main {
             System.out.println("3) My orders");
             System.out.println("4) View order details");
             System.out.println("5) Cancel my order");
-            System.out.println("6) Logout");
+            System.out.println("6) Search products");
+            System.out.println("7) Logout");
             System.out.print("Choose: ");
 
             String pick = in.nextLine().trim();
@@ -90,7 +177,8 @@ public class Main {
                     case "3" -> listMyOrders(store, user);
                     case "4" -> viewOrder(store, user, false);
                     case "5" -> cancelMyOrder(store, user);
-                    case "6" -> { return; }
+                    case "6" -> searchProducts(store);
+                    case "7" -> { return; }
                     default -> System.out.println("Unknown option.");
                 }
             } catch (Exception ex) {
@@ -101,9 +189,26 @@ public class Main {
 
     private static void listProducts(Store store) {
         System.out.println("\n--- Product Catalog ---");
-        for (Product p : store.listProducts()) {
-            System.out.printf("%s | %s | $%s | stock=%d | low<=%d%n",
-                    p.getSku(), p.getName(), p.getPrice().toPlainString(), p.getStock(), p.getLowStockThreshold());
+        String after = null;
+        while (true) {
+            List<Product> page = store.listProducts(after, PAGE_SIZE);
+            for (Product p : page) {
+                System.out.printf("%s | %s | $%s | stock=%d | low<=%d%n",
+                        p.getSku(), p.getName(), p.getPrice(), p.getStock(), p.getLowStockThreshold());
+            }
+            if (!morePages(page.size())) return;
+            after = page.get(page.size() - 1).getSku();
+        }
+    }
+
+    private static void searchProducts(Store store) {
+        System.out.println("\n--- Search Products ---");
+        String text = ask("Search");
+        boolean inStock = ask("In stock only (y/n)").equalsIgnoreCase("y");
+        List<Product> found = store.searchProducts(text, PAGE_SIZE, inStock);
+        if (found.isEmpty()) System.out.println("No matches.");
+        for (Product p : found) {
+            System.out.printf("%s | %s | $%s | stock=%d%n", p.getSku(), p.getName(), p.getPrice(), p.getStock());
         }
     }
 
@@ -111,7 +216,7 @@ public class Main {
         System.out.println("\n--- Add Product ---");
         String sku = ask("SKU");
         String name = ask("Name");
-        BigDecimal price = askMoney("Price");
+        Money price = askMoney("Price");
         int stock = askInt("Initial stock", 0, Integer.MAX_VALUE);
         int threshold = askInt("Low stock threshold", 0, Integer.MAX_VALUE);
 
@@ -126,12 +231,13 @@ public class Main {
 
         System.out.println("Leave blank to keep current.");
         String name = askOptional("New name (" + p.getName() + ")");
-        String priceStr = askOptional("New price (" + p.getPrice().toPlainString() + ")");
+        String priceStr = askOptional("New price (" + p.getPrice() + ")");
         String thresholdStr = askOptional("New low-stock threshold (" + p.getLowStockThreshold() + ")");
 
-        if (!name.isBlank()) p.setName(name);
-        if (!priceStr.isBlank()) p.setPrice(new BigDecimal(priceStr));
-        if (!thresholdStr.isBlank()) p.setLowStockThreshold(Integer.parseInt(thresholdStr));
+        store.updateProduct(sku,
+                name.isBlank() ? null : name,
+                priceStr.isBlank() ? null : new BigDecimal(priceStr),
+                thresholdStr.isBlank() ? null : Integer.valueOf(thresholdStr));
 
         System.out.println("Updated.");
     }
@@ -146,10 +252,25 @@ public class Main {
     private static void restockProduct(Store store) {
         System.out.println("\n--- Restock ---");
         String sku = ask("SKU");
-        Product p = store.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("SKU not found"));
+        store.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("SKU not found"));
         int qty = askInt("Qty to add", 1, Integer.MAX_VALUE);
-        p.addStock(qty);
-        System.out.println("Stock updated. Now: " + p.getStock());
+        int now = store.restock(sku, qty);
+        System.out.println("Stock updated. Now: " + now);
+    }
+
+    private static void repriceCatalog(Store store) {
+        System.out.println("\n--- Reprice Catalog ---");
+        String prefix = askOptional("SKU prefix (blank for all)");
+        int percent = askInt("Change in percent (-99 to 1000)", -99, 1000);
+        BigDecimal factor = BigDecimal.valueOf(100 + percent).movePointLeft(2);
+        List<ProductUpdate> updates = store.streamProducts(null)
+                .filter(p -> p.getSku().startsWith(prefix))
+                .map(p -> ProductUpdate.price(p.getSku(),
+                        p.getPrice().toBigDecimal().multiply(factor).setScale(Money.SCALE, RoundingMode.HALF_UP)))
+                .collect(Collectors.toList());
+        ImportResult r = store.updateProducts(updates);
+        System.out.println("Repriced " + r.getUpdated() + ", rejected " + r.getRejected());
+        r.getErrors().stream().limit(10).forEach(e -> System.out.println("  " + e));
     }
 
     private static void lowStock(Store store) {
@@ -205,7 +326,7 @@ public class Main {
         }
 
         Order o = store.placeOrder(user.getUsername(), cart);
-        System.out.println("Order placed. ID: " + o.getId() + " | Total: $" + o.total().toPlainString());
+        System.out.println("Order placed. ID: " + o.getId() + " | Total: $" + o.total());
 
         var low = store.lowStockProducts();
         if (!low.isEmpty()) {
@@ -219,30 +340,41 @@ public class Main {
 
     private static void listMyOrders(Store store, User user) {
         System.out.println("\n--- My Orders ---");
-        var orders = store.listOrdersForUser(user.getUsername());
-        if (orders.isEmpty()) {
-            System.out.println("No orders yet.");
-            return;
-        }
-        for (Order o : orders) {
-            System.out.printf("ID=%d | status=%s | total=$%s%n",
-                    o.getId(), o.getStatus(), o.total().toPlainString());
+        long after = 0;
+        while (true) {
+            List<Order> page = store.listOrdersForUser(user.getUsername(), after, PAGE_SIZE);
+            if (page.isEmpty() && after == 0) System.out.println("No orders yet.");
+            for (Order o : page) {
+                System.out.printf("ID=%d | status=%s | total=$%s%n",
+                        o.getId(), o.getStatus(), o.total());
+            }
+            if (!morePages(page.size())) return;
+            after = page.get(page.size() - 1).getId();
         }
     }
 
     private static void listAllOrders(Store store) {
         System.out.println("\n--- All Orders ---");
-        var orders = store.listAllOrders();
-        if (orders.isEmpty()) {
-            System.out.println("No orders yet.");
-            return;
-        }
-        for (Order o : orders) {
-            System.out.printf("ID=%d | user=%s | status=%s | total=$%s%n",
-                    o.getId(), o.getCustomerUsername(), o.getStatus(), o.total().toPlainString());
+        long after = 0;
+        while (true) {
+            List<Order> page = store.listOrders(after, PAGE_SIZE);
+            if (page.isEmpty() && after == 0) System.out.println("No orders yet.");
+            for (Order o : page) {
+                System.out.printf("ID=%d | user=%s | status=%s | total=$%s%n",
+                        o.getId(), o.getCustomerUsername(), o.getStatus(), o.total());
+            }
+            if (!morePages(page.size())) return;
+            after = page.get(page.size() - 1).getId();
         }
     }
 
+    // A full page may have more behind it; let the user decide whether to fetch it.
+    private static boolean morePages(int shown) {
+        if (shown < PAGE_SIZE) return false;
+        System.out.print("-- Enter for more, q to stop: ");
+        return !in.nextLine().trim().equalsIgnoreCase("q");
+    }
+
     private static void viewOrder(Store store, User user, boolean adminView) {
         long id = askLong("Order ID");
         Order o = store.findOrder(id).orElseThrow(() -> new IllegalArgumentException("Order not found"));
@@ -255,14 +387,14 @@ public class Main {
         System.out.println("ID: " + o.getId());
         System.out.println("User: " + o.getCustomerUsername());
         System.out.println("Status: " + o.getStatus());
-        System.out.println("Total: $" + o.total().toPlainString());
+        System.out.println("Total: $" + o.total());
         System.out.println("Items:");
         for (OrderItem it : o.getItems()) {
             System.out.printf("  %s | %s | $%s x %d = $%s%n",
                     it.getSku(), it.getName(),
-                    it.getUnitPrice().toPlainString(),
+                    it.getUnitPrice(),
                     it.getQuantity(),
-                    it.lineTotal().toPlainString());
+                    it.lineTotal());
         }
     }
 
@@ -299,6 +431,44 @@ public class Main {
         System.out.println("Updated.");
     }
 
+    // A warehouse wave: every order at one status, optionally limited to a creation window and one customer, moved on
+    // to the next status in a single call.
+    private static void bulkUpdateOrderStatus(Store store) {
+        OrderStatus from = askStatus("Move orders now at status");
+        Instant createdFrom = askTime("Created at or after (yyyy-MM-ddTHH:mm, blank for any)");
+        Instant createdTo = askTime("Created before (yyyy-MM-ddTHH:mm, blank for any)");
+        String customer = askOptional("Customer (blank for all)");
+        OrderStatus to = askStatus("To status");
+
+        BulkTransitionResult r = store.transitionOrders(from, createdFrom, createdTo,
+                customer.isEmpty() ? null : o -> o.getCustomerUsername().equals(customer), to);
+        System.out.println(r);
+        int shown = 0;
+        for (BulkTransitionResult.Outcome o : r.getOutcomes()) {
+            if (o.isMoved()) continue;
+            if (shown++ == PAGE_SIZE) {
+                System.out.println("... " + (r.getRejected() - PAGE_SIZE) + " more rejected");
+                break;
+            }
+            System.out.println("  " + o);
+        }
+    }
+
+    private static OrderStatus askStatus(String label) {
+        String s = ask(label + " (PLACED, PAID, PACKED, SHIPPED, DELIVERED, CANCELLED)");
+        try {
+            return OrderStatus.valueOf(s.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown status: " + s);
+        }
+    }
+
+    // null when left blank.
+    private static Instant askTime(String label) {
+        String s = askOptional(label);
+        return s.isEmpty() ? null : LocalDateTime.parse(s).atZone(ZoneId.systemDefault()).toInstant();
+    }
+
     private static String ask(String label) {
         while (true) {
             System.out.print(label + ": ");
@@ -343,12 +513,12 @@ public class Main {
         }
     }
 
-    private static BigDecimal askMoney(String label) {
+    private static Money askMoney(String label) {
         while (true) {
             System.out.print(label + ": ");
             String s = in.nextLine().trim();
             try {
-                BigDecimal v = new BigDecimal(s);
+                Money v = Money.of(new BigDecimal(s));
                 if (v.signum() < 0) {
                     System.out.println("Must be >= 0");
                     continue;
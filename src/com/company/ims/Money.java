@@ -0,0 +1,78 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Fixed-point amount held as whole minor units (cents). BigDecimal is only used to convert at the edges.
+public final class Money implements Comparable<Money> {
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+    private static final long ONE = 100;
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    public static Money of(BigDecimal amount) {
+        if (amount == null) throw new IllegalArgumentException("Amount required");
+        BigDecimal scaled;
+        try {
+            scaled = amount.setScale(SCALE, RoundingMode.UNNECESSARY);
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("At most " + SCALE + " decimal places allowed: " + amount.toPlainString());
+        }
+        try {
+            return ofMinor(scaled.unscaledValue().longValueExact());
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Amount out of range: " + amount.toPlainString());
+        }
+    }
+
+    public long minorUnits() { return minorUnits; }
+    public int signum() { return Long.signum(minorUnits); }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money times(int quantity) {
+        return ofMinor(Math.multiplyExact(minorUnits, quantity));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        if (minorUnits == Long.MIN_VALUE) return toBigDecimal().toPlainString();
+        long abs = Math.abs(minorUnits);
+        long frac = abs % ONE;
+        StringBuilder sb = new StringBuilder(24);
+        if (minorUnits < 0) sb.append('-');
+        sb.append(abs / ONE).append('.');
+        if (frac < 10) sb.append('0');
+        return sb.append(frac).toString();
+    }
+}
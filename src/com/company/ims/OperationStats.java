@@ -0,0 +1,73 @@
+package com.company.ims;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency of successful calls plus a rejection count per reason for one Store operation.
+public final class OperationStats implements OperationStatsMXBean {
+    private static final Rejection[] REASONS = Rejection.values();
+
+    private final String name;
+    private final StoreMetrics owner;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder[] rejections = new LongAdder[REASONS.length];
+
+    OperationStats(String name, StoreMetrics owner) {
+        this.name = name;
+        this.owner = owner;
+        for (int i = 0; i < rejections.length; i++) rejections[i] = new LongAdder();
+    }
+
+    public String name() { return name; }
+
+    void succeeded(long startNanos) {
+        if (owner.isEnabled()) latency.record(System.nanoTime() - startNanos);
+    }
+
+    void rejected(Rejection reason) {
+        if (owner.isEnabled()) rejections[reason.ordinal()].increment();
+    }
+
+    void rejected(RuntimeException ex) {
+        if (owner.isEnabled()) rejections[Rejection.of(ex).ordinal()].increment();
+    }
+
+    public long rejections(Rejection reason) {
+        return rejections[reason.ordinal()].sum();
+    }
+
+    @Override
+    public long getSucceeded() {
+        return latency.count();
+    }
+
+    @Override
+    public long getRejected() {
+        long n = 0;
+        for (LongAdder a : rejections) n += a.sum();
+        return n;
+    }
+
+    @Override
+    public Map<String, Long> getRejectionsByReason() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (Rejection r : REASONS) {
+            long n = rejections[r.ordinal()].sum();
+            if (n > 0) out.put(r.name(), n);
+        }
+        return out;
+    }
+
+    @Override
+    public double getP50Micros() { return latency.percentile(0.50) / 1000.0; }
+
+    @Override
+    public double getP99Micros() { return latency.percentile(0.99) / 1000.0; }
+
+    @Override
+    public double getP999Micros() { return latency.percentile(0.999) / 1000.0; }
+
+    @Override
+    public double getMaxMicros() { return latency.max() / 1000.0; }
+}
@@ -0,0 +1,13 @@
+package com.company.ims;
+
+import java.util.Map;
+
+public interface OperationStatsMXBean {
+    long getSucceeded();
+    long getRejected();
+    Map<String, Long> getRejectionsByReason();
+    double getP50Micros();
+    double getP99Micros();
+    double getP999Micros();
+    double getMaxMicros();
+}
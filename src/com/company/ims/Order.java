@@ -1,45 +1,159 @@
 package com.company.ims;
 
-import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
 public class Order {
+    // Per line: SKU id, name id (both from the store's SkuTable), quantity, unit price in minor units (high, low).
+    private static final int LINE_INTS = 5;
+
     private final long id;
     private final String customerUsername;
-    private final Instant createdAt;
-    private OrderStatus status;
-    private final List<OrderItem> items;
+    private final long createdSeconds;
+    private final int createdNanos;
+    private volatile OrderStatus status;
+    // Earlier statuses that open snapshot views may still need; null when none are open.
+    private volatile StatusChange history;
+    private final long createdVersion;
+    private final SkuTable skus;
+    private final int[] lines;
+    private final long totalMinor;
+
+    Order(long id, String customerUsername, Instant createdAt, SkuTable skus, List<OrderItem> items, long version) {
+        this(id, customerUsername, createdAt, skus, pack(skus, items), version);
+    }
 
-    public Order(long id, String customerUsername, List<OrderItem> items) {
+    // lines comes from newLines/setLine and is owned by the order from here on. version is the placing mutation's,
+    // from the store's VersionClock (0 for orders read back from disk).
+    Order(long id, String customerUsername, Instant createdAt, SkuTable skus, int[] lines, long version) {
         if (customerUsername == null || customerUsername.isBlank()) throw new IllegalArgumentException("Customer required");
-        if (items == null || items.isEmpty()) throw new IllegalArgumentException("Items required");
+        if (lines == null || lines.length == 0) throw new IllegalArgumentException("Items required");
 
         this.id = id;
         this.customerUsername = customerUsername.trim();
-        this.items = new ArrayList<>(items);
-        this.createdAt = Instant.now();
+        this.createdSeconds = createdAt.getEpochSecond();
+        this.createdNanos = createdAt.getNano();
+        this.skus = skus;
+        this.lines = lines;
+        long sum = 0;
+        for (int i = 0; i < lineCount(); i++) sum = Math.addExact(sum, Math.multiplyExact(unitPriceMinor(i), quantity(i)));
+        this.totalMinor = sum;
         this.status = OrderStatus.PLACED;
+        this.createdVersion = version;
+    }
+
+    // A detached copy with the given status, for snapshot views.
+    private Order(Order o, OrderStatus status) {
+        this.id = o.id;
+        this.customerUsername = o.customerUsername;
+        this.createdSeconds = o.createdSeconds;
+        this.createdNanos = o.createdNanos;
+        this.skus = o.skus;
+        this.lines = o.lines;
+        this.totalMinor = o.totalMinor;
+        this.status = status;
+        this.createdVersion = o.createdVersion;
+    }
+
+    static int[] newLines(int count) {
+        return new int[count * LINE_INTS];
+    }
+
+    static void setLine(int[] lines, int i, int skuId, int nameId, int quantity, long unitPriceMinor) {
+        if (quantity <= 0) throw new IllegalArgumentException("Qty must be > 0");
+        if (unitPriceMinor < 0) throw new IllegalArgumentException("Price must be >= 0");
+        int at = i * LINE_INTS;
+        lines[at] = skuId;
+        lines[at + 1] = nameId;
+        lines[at + 2] = quantity;
+        lines[at + 3] = (int) (unitPriceMinor >>> 32);
+        lines[at + 4] = (int) unitPriceMinor;
+    }
+
+    private static int[] pack(SkuTable skus, List<OrderItem> items) {
+        if (items == null || items.isEmpty()) throw new IllegalArgumentException("Items required");
+        int[] lines = newLines(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem it = items.get(i);
+            setLine(lines, i, skus.internSku(it.getSku()), skus.internName(it.getName()), it.getQuantity(),
+                    it.getUnitPrice().minorUnits());
+        }
+        return lines;
     }
 
     public long getId() { return id; }
     public String getCustomerUsername() { return customerUsername; }
-    public Instant getCreatedAt() { return createdAt; }
+    public Instant getCreatedAt() { return Instant.ofEpochSecond(createdSeconds, createdNanos); }
     public OrderStatus getStatus() { return status; }
-    public List<OrderItem> getItems() { return new ArrayList<>(items); }
 
-    public BigDecimal total() {
-        BigDecimal sum = BigDecimal.ZERO;
-        for (OrderItem it : items) sum = sum.add(it.lineTotal());
-        return sum;
+    // A read-only view; each get builds its OrderItem from the packed line.
+    public List<OrderItem> getItems() {
+        return new AbstractList<OrderItem>() {
+            @Override
+            public OrderItem get(int i) {
+                if (i < 0 || i >= lineCount()) throw new IndexOutOfBoundsException(i);
+                return new OrderItem(sku(i), itemName(i), Money.ofMinor(unitPriceMinor(i)), quantity(i));
+            }
+
+            @Override
+            public int size() {
+                return lineCount();
+            }
+        };
+    }
+
+    // Lines never change after creation, so the total is worked out once in the constructor.
+    public Money total() {
+        return Money.ofMinor(totalMinor);
+    }
+
+    int lineCount() { return lines.length / LINE_INTS; }
+    int skuId(int i) { return lines[i * LINE_INTS]; }
+    String sku(int i) { return skus.sku(lines[i * LINE_INTS]); }
+    String itemName(int i) { return skus.name(lines[i * LINE_INTS + 1]); }
+    int quantity(int i) { return quantityOf(lines, i); }
+
+    static int quantityOf(int[] lines, int i) {
+        return lines[i * LINE_INTS + 2];
+    }
+
+    long unitPriceMinor(int i) {
+        int at = i * LINE_INTS;
+        return ((long) lines[at + 3] << 32) | (lines[at + 4] & 0xFFFFFFFFL);
     }
 
     public boolean isTerminal() {
         return status == OrderStatus.CANCELLED || status == OrderStatus.DELIVERED;
     }
 
-    public void setStatus(OrderStatus newStatus) {
+    // Only through Store, which refiles the order in its OrderIndex under the new status; status changes go through
+    // Store.updateOrderStatusAsAdmin and Store.cancelOrderAsCustomer. Caller holds the order's monitor and took
+    // version under it, so the history stays in version order. floor is the store's VersionClock floor.
+    synchronized void setStatus(OrderStatus newStatus, long version, long floor) {
+        checkTransition(newStatus);
+        // Pushed before the status changes; asOf reads the status first.
+        StatusChange h = history;
+        history = floor == Long.MAX_VALUE ? null
+                : new StatusChange(version, status, h != null && h.version > floor ? h : null);
+        this.status = newStatus;
+    }
+
+    // null if the order did not exist yet at this version.
+    Order asOf(long version) {
+        if (createdVersion > version) return null;
+        OrderStatus s = status;
+        for (StatusChange h = history; h != null && h.version > version; h = h.prev) s = h.before;
+        return new Order(this, s);
+    }
+
+    // Whether an open view at or above floor could see this order differently from how it is now.
+    boolean changedAfter(long floor) {
+        StatusChange h = history;
+        return createdVersion > floor || (h != null && h.version > floor);
+    }
+
+    void checkTransition(OrderStatus newStatus) {
         if (newStatus == null) throw new IllegalArgumentException("Status required");
         if (isTerminal()) throw new IllegalStateException("Order is already finished");
 
@@ -56,11 +170,25 @@ public class Order {
             if (newStatus != OrderStatus.DELIVERED)
                 throw new IllegalArgumentException("From SHIPPED -> DELIVERED only");
         }
+    }
 
-        this.status = newStatus;
+    synchronized void restoreStatus(OrderStatus status) {
+        this.status = status;
     }
 
     public boolean canCustomerCancel() {
         return status == OrderStatus.PLACED || status == OrderStatus.PAID;
     }
+
+    private static final class StatusChange {
+        final long version;
+        final OrderStatus before;
+        final StatusChange prev;
+
+        StatusChange(long version, OrderStatus before, StatusChange prev) {
+            this.version = version;
+            this.before = before;
+            this.prev = prev;
+        }
+    }
 }
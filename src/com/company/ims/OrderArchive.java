@@ -0,0 +1,399 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32C;
+
+// Append-only file of finished orders, read back through memory-mapped 64 MB chunks. Layout: header (magic,
+// version), then records of [payload length, CRC32C, payload]; a record never straddles a chunk boundary (the gap
+// before the boundary is zero-filled). The id -> offset index lives on the heap as a few sorted runs of two longs
+// per order, rebuilt on open by scanning the file; a torn tail from a crash mid-append is cut off there.
+final class OrderArchive implements AutoCloseable {
+    private static final int MAGIC = 0x494D5341; // "IMSA"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int CHUNK_SHIFT = 26;
+    private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+    private static final String FILE_NAME = "orders.archive";
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    // Sorted by id; never modified once published.
+    private static final class Run {
+        final long[] ids;
+        final long[] offsets;
+
+        Run(long[] ids, long[] offsets) {
+            this.ids = ids;
+            this.offsets = offsets;
+        }
+    }
+
+    private final Path dir;
+    private final SkuTable skus;
+    private final RecordOutput rec = new RecordOutput(512);
+    private FileChannel channel;
+    private volatile long end;
+    private volatile Run[] runs = new Run[0];
+    private volatile MappedByteBuffer[] maps = new MappedByteBuffer[0];
+    private volatile AtomicReferenceArray<Order> cache;
+
+    private OrderArchive(Path dir, SkuTable skus) {
+        this.dir = dir;
+        this.skus = skus;
+    }
+
+    // Hands target every archived order as it is read, for its indexes and sales totals.
+    static OrderArchive open(Path dir, Store target) throws IOException {
+        OrderArchive a = new OrderArchive(dir, target.skuTable());
+        Path file = dir.resolve(FILE_NAME);
+        if (Files.exists(file)) a.load(file, target);
+        return a;
+    }
+
+    private void load(Path file, Store target) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) { }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) throw new IOException("Not an order archive: " + file);
+        if (header.getInt(4) != FORMAT_VERSION) throw new IOException("Unsupported archive version: " + header.getInt(4));
+        end = size;
+
+        long[] ids = new long[1024];
+        long[] offsets = new long[1024];
+        int n = 0;
+        long pos = HEADER_BYTES;
+        CRC32C crc = new CRC32C();
+        while (pos < size) {
+            long room = CHUNK_BYTES - (pos & (CHUNK_BYTES - 1));
+            if (room < RECORD_HEADER_BYTES) {
+                pos += room;
+                continue;
+            }
+            if (pos + RECORD_HEADER_BYTES > size) break;
+            ByteBuffer head = slice(pos, RECORD_HEADER_BYTES);
+            int len = head.getInt();
+            if (len == 0) {
+                pos += room;
+                continue;
+            }
+            if (len < 0 || RECORD_HEADER_BYTES + len > room || pos + RECORD_HEADER_BYTES + len > size) break;
+            ByteBuffer payload = slice(pos + RECORD_HEADER_BYTES, len);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != head.getInt()) break;
+
+            Order o = decode(new RecordInput(payload));
+            long id = o.getId();
+            target.restoreArchived(o);
+            if (n == ids.length) {
+                ids = Arrays.copyOf(ids, n * 2);
+                offsets = Arrays.copyOf(offsets, n * 2);
+            }
+            ids[n] = id;
+            offsets[n] = pos;
+            n++;
+            pos += RECORD_HEADER_BYTES + len;
+        }
+        if (pos < size) {
+            channel.truncate(pos);
+            channel.force(true);
+            maps = new MappedByteBuffer[0];
+        }
+        end = Math.min(pos, size);
+        if (n > 0) runs = new Run[] { sorted(ids, offsets, n) };
+    }
+
+    long size() {
+        long n = 0;
+        for (Run r : runs) n += r.ids.length;
+        return n;
+    }
+
+    boolean contains(long id) {
+        return offsetOf(id) >= 0;
+    }
+
+    // 0 turns the cache off. Recently read orders are kept in a direct-mapped table: a read replaces whatever shared
+    // its slot, which is all "recent" needs to mean here.
+    void setCacheSize(int entries) {
+        cache = entries <= 0 ? null : new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(1, entries - 1)) << 1);
+    }
+
+    Order find(long id) {
+        AtomicReferenceArray<Order> c = cache;
+        int slot = c == null ? 0 : slot(id, c.length());
+        if (c != null) {
+            Order o = c.get(slot);
+            if (o != null && o.getId() == id) return o;
+        }
+        long offset = offsetOf(id);
+        if (offset < 0) return null;
+        Order o = read(offset);
+        if (c != null) c.set(slot, o);
+        return o;
+    }
+
+    // Writes the orders and makes them durable before any of them becomes findable. Single writer at a time.
+    synchronized void append(List<Order> orders) throws IOException {
+        if (orders.isEmpty()) return;
+        if (channel == null) create();
+
+        long pos = end;
+        long[] ids = new long[orders.size()];
+        long[] offsets = new long[orders.size()];
+        ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+        long bufStart = pos;
+        for (int i = 0; i < orders.size(); i++) {
+            encode(orders.get(i));
+            int len = rec.length();
+            if (RECORD_HEADER_BYTES + len > CHUNK_BYTES) throw new IOException("Order " + orders.get(i).getId() + " is too large to archive");
+            long room = CHUNK_BYTES - (pos & (CHUNK_BYTES - 1));
+            int need = RECORD_HEADER_BYTES + len + (RECORD_HEADER_BYTES + len > room ? (int) room : 0);
+            if (buf.remaining() < need) {
+                bufStart = flush(buf, bufStart);
+                if (buf.capacity() < need) buf = ByteBuffer.allocate(need);
+            }
+            if (RECORD_HEADER_BYTES + len > room) {
+                for (long z = 0; z < room; z++) buf.put((byte) 0);
+                pos += room;
+            }
+            buf.putInt(len).putInt(rec.crc());
+            rec.copyTo(buf);
+            ids[i] = orders.get(i).getId();
+            offsets[i] = pos;
+            pos += RECORD_HEADER_BYTES + len;
+        }
+        flush(buf, bufStart);
+        channel.force(false);
+        end = pos;
+        publish(sorted(ids, offsets, ids.length));
+    }
+
+    // Orders in id order, strictly after afterId, merging the live ones from hot (also in id order) with the
+    // archived ones. An order in both (it is being archived right now) is taken from hot.
+    Iterator<Order> mergeWith(Iterator<Order> hot, long afterId) {
+        Run[] rs = runs;
+        int[] next = new int[rs.length];
+        for (int r = 0; r < rs.length; r++) {
+            int i = Arrays.binarySearch(rs[r].ids, afterId);
+            next[r] = i >= 0 ? i + 1 : -i - 1;
+        }
+        return new Iterator<Order>() {
+            private Order hotNext = hot.hasNext() ? hot.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return hotNext != null || coldRun() >= 0;
+            }
+
+            @Override
+            public Order next() {
+                int r = coldRun();
+                if (hotNext == null && r < 0) throw new NoSuchElementException();
+                if (r < 0 || (hotNext != null && hotNext.getId() <= rs[r].ids[next[r]])) {
+                    Order o = hotNext;
+                    hotNext = hot.hasNext() ? hot.next() : null;
+                    if (r >= 0 && rs[r].ids[next[r]] == o.getId()) next[r]++;
+                    return o;
+                }
+                long id = rs[r].ids[next[r]++];
+                return find(id);
+            }
+
+            // The run holding the smallest archived id not returned yet, or -1.
+            private int coldRun() {
+                int best = -1;
+                for (int r = 0; r < rs.length; r++) {
+                    if (next[r] < rs[r].ids.length && (best < 0 || rs[r].ids[next[r]] < rs[best].ids[next[best]])) best = r;
+                }
+                return best;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    private void create() throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FILE_NAME);
+        Path tmp = dir.resolve(FILE_NAME + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(FORMAT_VERSION);
+            header.flip();
+            while (header.hasRemaining()) ch.write(header);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        end = HEADER_BYTES;
+    }
+
+    private long flush(ByteBuffer buf, long at) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) at += channel.write(buf, at);
+        buf.clear();
+        return at;
+    }
+
+    private void encode(Order o) {
+        Instant createdAt = o.getCreatedAt();
+        rec.reset()
+                .writeVarLong(o.getId())
+                .writeString(o.getCustomerUsername())
+                .writeLong(createdAt.getEpochSecond())
+                .writeVarLong(createdAt.getNano())
+                .writeByte(o.getStatus().ordinal())
+                .writeVarLong(o.lineCount());
+        for (int i = 0; i < o.lineCount(); i++) {
+            rec.writeString(o.sku(i))
+                    .writeString(o.itemName(i))
+                    .writeVarLong(o.unitPriceMinor(i))
+                    .writeVarLong(o.quantity(i));
+        }
+    }
+
+    private Order read(long offset) {
+        try {
+            int len = slice(offset, RECORD_HEADER_BYTES).getInt();
+            return decode(new RecordInput(slice(offset + RECORD_HEADER_BYTES, len)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read archived order at " + offset, ex);
+        }
+    }
+
+    private Order decode(RecordInput in) throws IOException {
+        long id = in.readVarLong();
+        String user = skus.internCustomer(in.readString());
+        Instant createdAt = Instant.ofEpochSecond(in.readLong(), in.readVarLong());
+        OrderStatus status = STATUSES[in.readByte()];
+        int n = in.readVarInt();
+        int[] lines = Order.newLines(n);
+        for (int i = 0; i < n; i++) {
+            int sku = skus.internSku(in.readString());
+            int name = skus.internName(in.readString());
+            long price = in.readVarLong();
+            Order.setLine(lines, i, sku, name, in.readVarInt(), price);
+        }
+        Order o = new Order(id, user, createdAt, skus, lines, 0);
+        o.restoreStatus(status);
+        return o;
+    }
+
+    // A read-only view of [offset, offset + len), which never crosses a chunk boundary. The last chunk is mapped
+    // again, larger, once appends have moved past its current mapping.
+    private ByteBuffer slice(long offset, int len) throws IOException {
+        int chunk = (int) (offset >>> CHUNK_SHIFT);
+        int from = (int) (offset & (CHUNK_BYTES - 1));
+        MappedByteBuffer[] ms = maps;
+        MappedByteBuffer m = chunk < ms.length ? ms[chunk] : null;
+        if (m == null || m.capacity() < from + len) m = map(chunk, from + len);
+        return m.duplicate().position(from).limit(from + len).slice();
+    }
+
+    private synchronized MappedByteBuffer map(int chunk, int needed) throws IOException {
+        MappedByteBuffer[] ms = maps;
+        MappedByteBuffer m = chunk < ms.length ? ms[chunk] : null;
+        if (m != null && m.capacity() >= needed) return m;
+        long start = (long) chunk << CHUNK_SHIFT;
+        long size = Math.min(CHUNK_BYTES, end - start);
+        if (size < needed) throw new IOException("Archive offset " + (start + needed) + " is past the end");
+        m = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        MappedByteBuffer[] grown = Arrays.copyOf(ms, Math.max(ms.length, chunk + 1));
+        grown[chunk] = m;
+        maps = grown;
+        return m;
+    }
+
+    private long offsetOf(long id) {
+        for (Run r : runs) {
+            int i = Arrays.binarySearch(r.ids, id);
+            if (i >= 0) return r.offsets[i];
+        }
+        return -1;
+    }
+
+    // Adds a run and merges neighbours of similar size, so there are only O(log n) runs to search.
+    private void publish(Run run) {
+        List<Run> rs = new ArrayList<>(Arrays.asList(runs));
+        rs.add(run);
+        while (rs.size() >= 2 && rs.get(rs.size() - 2).ids.length <= 2 * rs.get(rs.size() - 1).ids.length) {
+            Run b = rs.remove(rs.size() - 1);
+            Run a = rs.remove(rs.size() - 1);
+            rs.add(merge(a, b));
+        }
+        runs = rs.toArray(new Run[0]);
+    }
+
+    private static Run merge(Run a, Run b) {
+        int n = a.ids.length + b.ids.length;
+        long[] ids = new long[n];
+        long[] offsets = new long[n];
+        int i = 0, j = 0, k = 0;
+        while (i < a.ids.length || j < b.ids.length) {
+            if (j == b.ids.length || (i < a.ids.length && a.ids[i] < b.ids[j])) {
+                ids[k] = a.ids[i];
+                offsets[k++] = a.offsets[i++];
+            } else {
+                ids[k] = b.ids[j];
+                offsets[k++] = b.offsets[j++];
+            }
+        }
+        return new Run(ids, offsets);
+    }
+
+    // Heapsort on the pair of arrays, so a multi-million entry index is sorted without boxing.
+    private static Run sorted(long[] ids, long[] offsets, int n) {
+        long[] sIds = Arrays.copyOf(ids, n);
+        long[] sOffsets = Arrays.copyOf(offsets, n);
+        for (int i = n / 2 - 1; i >= 0; i--) siftDown(sIds, sOffsets, i, n);
+        for (int last = n - 1; last > 0; last--) {
+            swap(sIds, sOffsets, 0, last);
+            siftDown(sIds, sOffsets, 0, last);
+        }
+        return new Run(sIds, sOffsets);
+    }
+
+    private static void siftDown(long[] ids, long[] offsets, int i, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) return;
+            if (child + 1 < n && ids[child + 1] > ids[child]) child++;
+            if (ids[i] >= ids[child]) return;
+            swap(ids, offsets, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(long[] ids, long[] offsets, int i, int j) {
+        long t = ids[i];
+        ids[i] = ids[j];
+        ids[j] = t;
+        t = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = t;
+    }
+
+    private static int slot(long id, int length) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (length - 1);
+    }
+}
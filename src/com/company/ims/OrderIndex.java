@@ -0,0 +1,143 @@
+package com.company.ims;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongFunction;
+
+// Keys are (creation time in epoch nanos, id) pairs, kept for archived orders too, so they stay two longs each.
+final class OrderIndex {
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<Key>> byCustomer = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Key> byCreatedAt = new ConcurrentSkipListSet<>();
+    // Orders still on the heap by current status; filled in the constructor and only read after.
+    private final Map<OrderStatus, ConcurrentSkipListSet<Key>> byStatus = new EnumMap<>(OrderStatus.class);
+
+    OrderIndex() {
+        for (OrderStatus s : OrderStatus.values()) byStatus.put(s, new ConcurrentSkipListSet<>());
+    }
+
+    // Reads the status under the order's monitor, the lock its transitions hold, so a transition racing the add
+    // cannot leave the order filed under a status it has already left.
+    void add(Order o) {
+        Key k = new Key(nanos(o.getCreatedAt()), o.getId());
+        file(o.getCustomerUsername(), k);
+        synchronized (o) {
+            byStatus.get(o.getStatus()).add(k);
+        }
+    }
+
+    void add(long id, String username, Instant createdAt) {
+        file(username, new Key(nanos(createdAt), id));
+    }
+
+    private void file(String username, Key k) {
+        byCustomer.computeIfAbsent(username, u -> new ConcurrentSkipListSet<>()).add(k);
+        byCreatedAt.add(k);
+    }
+
+    // Caller holds the order's monitor (or is replaying the journal) and has just moved it on from before. Added
+    // under the new status first, so a scan of either status never misses it.
+    void statusChanged(Order o, OrderStatus before) {
+        if (before == o.getStatus()) return;
+        Key k = new Key(nanos(o.getCreatedAt()), o.getId());
+        byStatus.get(o.getStatus()).add(k);
+        byStatus.get(before).remove(k);
+    }
+
+    // The order is leaving the heap for the archive.
+    void archived(Order o) {
+        byStatus.get(o.getStatus()).remove(new Key(nanos(o.getCreatedAt()), o.getId()));
+    }
+
+    // Oldest first, on creation time in [from, to).
+    List<Order> withStatus(OrderStatus status, Instant from, Instant to, int limit, LongFunction<Order> lookup) {
+        return resolve(range(byStatus.get(status), from, to), limit, lookup);
+    }
+
+    List<Order> forCustomer(String username, LongFunction<Order> lookup) {
+        NavigableSet<Key> keys = byCustomer.get(username);
+        if (keys == null) return Collections.emptyList();
+        return resolve(keys, Integer.MAX_VALUE, lookup);
+    }
+
+    // Oldest first, strictly after the order with the given creation time and id.
+    List<Order> forCustomerAfter(String username, Instant createdAt, long id, int limit, LongFunction<Order> lookup) {
+        NavigableSet<Key> keys = byCustomer.get(username);
+        if (keys == null) return Collections.emptyList();
+        return resolve(keys.tailSet(new Key(nanos(createdAt), id), false), limit, lookup);
+    }
+
+    List<Order> forCustomerNewestFirst(String username, Instant from, Instant to, int limit, LongFunction<Order> lookup) {
+        NavigableSet<Key> keys = byCustomer.get(username);
+        if (keys == null) return Collections.emptyList();
+        return resolve(range(keys, from, to).descendingSet(), limit, lookup);
+    }
+
+    List<Order> createdNewestFirst(Instant from, Instant to, int limit, LongFunction<Order> lookup) {
+        return resolve(range(byCreatedAt, from, to).descendingSet(), limit, lookup);
+    }
+
+    // [from, to) on creation time; a null bound is open.
+    private static NavigableSet<Key> range(NavigableSet<Key> keys, Instant from, Instant to) {
+        if (from != null && to != null) {
+            if (!from.isBefore(to)) return Collections.emptyNavigableSet();
+            return keys.subSet(new Key(nanos(from), Long.MIN_VALUE), true, new Key(nanos(to), Long.MIN_VALUE), false);
+        }
+        if (from != null) return keys.tailSet(new Key(nanos(from), Long.MIN_VALUE), true);
+        if (to != null) return keys.headSet(new Key(nanos(to), Long.MIN_VALUE), false);
+        return keys;
+    }
+
+    // Saturates outside roughly 1677..2262, which only bounds like Instant.MIN/MAX ever reach.
+    static long nanos(Instant t) {
+        long sec = t.getEpochSecond();
+        if (sec >= Long.MAX_VALUE / 1_000_000_000L) return Long.MAX_VALUE;
+        if (sec <= Long.MIN_VALUE / 1_000_000_000L) return Long.MIN_VALUE;
+        return sec * 1_000_000_000L + t.getNano();
+    }
+
+    private static List<Order> resolve(Iterable<Key> keys, int limit, LongFunction<Order> lookup) {
+        List<Order> out = new ArrayList<>(Math.min(limit, 64));
+        for (Key k : keys) {
+            if (out.size() >= limit) break;
+            Order o = lookup.apply(k.id);
+            if (o != null) out.add(o);
+        }
+        return out;
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final long createdAt;
+        final long id;
+
+        Key(long createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int c = Long.compare(createdAt, o.createdAt);
+            return c != 0 ? c : Long.compare(id, o.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return id == k.id && createdAt == k.createdAt;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+}
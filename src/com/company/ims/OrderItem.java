@@ -1,14 +1,13 @@
 package com.company.ims;
 
-import java.math.BigDecimal;
-
 public class OrderItem {
     private final String sku;
     private final String name;
-    private final BigDecimal unitPrice;
+    private final Money unitPrice;
     private final int quantity;
+    private final Money lineTotal;
 
-    public OrderItem(String sku, String name, BigDecimal unitPrice, int quantity) {
+    public OrderItem(String sku, String name, Money unitPrice, int quantity) {
         if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU required");
         if (name == null || name.isBlank()) throw new IllegalArgumentException("Name required");
         if (unitPrice == null || unitPrice.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
@@ -18,14 +17,15 @@ public class OrderItem {
         this.name = name;
         this.unitPrice = unitPrice;
         this.quantity = quantity;
+        this.lineTotal = unitPrice.times(quantity);
     }
 
     public String getSku() { return sku; }
     public String getName() { return name; }
-    public BigDecimal getUnitPrice() { return unitPrice; }
+    public Money getUnitPrice() { return unitPrice; }
     public int getQuantity() { return quantity; }
 
-    public BigDecimal lineTotal() {
-        return unitPrice.multiply(BigDecimal.valueOf(quantity));
+    public Money lineTotal() {
+        return lineTotal;
     }
 }
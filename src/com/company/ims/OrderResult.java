@@ -0,0 +1,23 @@
+package com.company.ims;
+
+public class OrderResult {
+    private final Order order;
+    private final String error;
+
+    private OrderResult(Order order, String error) {
+        this.order = order;
+        this.error = error;
+    }
+
+    static OrderResult placed(Order order) {
+        return new OrderResult(order, null);
+    }
+
+    static OrderResult rejected(String error) {
+        return new OrderResult(null, error);
+    }
+
+    public boolean isSuccess() { return order != null; }
+    public Order getOrder() { return order; }
+    public String getError() { return error; }
+}
@@ -1,16 +1,43 @@
 package com.company.ims;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
 import java.util.Objects;
 
 public class Product {
+    static final long NO_STOCK = -1L;
+    private static final long VERSION_ONE = 1L << 32;
+    private static final VarHandle STOCK;
+
+    static {
+        try {
+            STOCK = MethodHandles.lookup().findVarHandle(Product.class, "stock", StockChange.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final String sku;
-    private String name;
-    private BigDecimal price;
-    private int stock;
-    private int lowStockThreshold;
+    private volatile String name;
+    private volatile Money price;
+    private volatile StockChange stock;
+    private volatile int lowStockThreshold;
+    // Earlier name, price and threshold that open snapshot views may still need; null when none are open.
+    private volatile DetailsChange history;
+    private volatile VersionClock clock;
+    private volatile long addedVersion;
+    private volatile long removedVersion = Long.MAX_VALUE;
+    private volatile ProductObserver observer;
+    // Dense id in the owning store's SkuTable, -1 until the product is added to one.
+    private volatile int skuId = -1;
+    private volatile SkuTable.NameRef nameRef;
 
     public Product(String sku, String name, BigDecimal price, int stock, int lowStockThreshold) {
+        this(sku, name, price == null ? null : Money.of(price), stock, lowStockThreshold);
+    }
+
+    public Product(String sku, String name, Money price, int stock, int lowStockThreshold) {
         if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU required");
         if (name == null || name.isBlank()) throw new IllegalArgumentException("Name required");
         if (price == null || price.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
@@ -20,44 +47,279 @@ public class Product {
         this.sku = sku.trim();
         this.name = name.trim();
         this.price = price;
-        this.stock = stock;
+        this.stock = new StockChange(stock, 0, 0, null);
         this.lowStockThreshold = lowStockThreshold;
     }
 
     public String getSku() { return sku; }
     public String getName() { return name; }
-    public BigDecimal getPrice() { return price; }
-    public int getStock() { return stock; }
+    public Money getPrice() { return price; }
+    public int getStock() { return stockOf(stock.word); }
     public int getLowStockThreshold() { return lowStockThreshold; }
 
     public void setName(String name) {
         if (name == null || name.isBlank()) throw new IllegalArgumentException("Name required");
-        this.name = name.trim();
+        update(name, null, -1);
     }
 
     public void setPrice(BigDecimal price) {
-        if (price == null || price.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
-        this.price = price;
+        setPrice(price == null ? null : Money.of(price));
+    }
+
+    public void setPrice(Money price) {
+        if (price == null) throw new IllegalArgumentException("Price must be >= 0");
+        update(null, price, -1);
     }
 
     public void setLowStockThreshold(int lowStockThreshold) {
         if (lowStockThreshold < 0) throw new IllegalArgumentException("Threshold must be >= 0");
-        this.lowStockThreshold = lowStockThreshold;
+        update(null, null, lowStockThreshold);
+    }
+
+    // Changes the given fields (null or -1 leaves one alone) as one change, which snapshot views see whole or not at all.
+    void update(String newName, Money newPrice, int newThreshold) {
+        if (newName != null && newName.isBlank()) throw new IllegalArgumentException("Name required");
+        if (newPrice != null && newPrice.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
+        VersionClock c = clock;
+        long op = c == null ? 0 : c.enter();
+        try {
+            synchronized (this) {
+                apply(newName, newPrice, newThreshold, c == null ? 0 : c.next());
+            }
+        } finally {
+            if (c != null) c.exit(op);
+        }
+        updated(newName != null, newThreshold >= 0);
+    }
+
+    // The same, as part of a store mutation that already holds version (between the clock's enter and exit), so
+    // that a batch of products changes under one version.
+    void update(String newName, Money newPrice, int newThreshold, long version) {
+        if (newName != null && newName.isBlank()) throw new IllegalArgumentException("Name required");
+        if (newPrice != null && newPrice.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
+        synchronized (this) {
+            apply(newName, newPrice, newThreshold, version);
+        }
+        updated(newName != null, newThreshold >= 0);
+    }
+
+    private void apply(String newName, Money newPrice, int newThreshold, long version) {
+        long floor = floor();
+        // Pushed before the fields change; asOf reads the fields first, so it never pairs new values with a history
+        // that lacks them.
+        DetailsChange h = history;
+        history = floor == Long.MAX_VALUE ? null
+                : new DetailsChange(version, name, price, lowStockThreshold, h != null && h.version > floor ? h : null);
+        if (newName != null) name = newName.trim();
+        if (newPrice != null) price = newPrice;
+        if (newThreshold >= 0) lowStockThreshold = newThreshold;
+    }
+
+    private void updated(boolean name, boolean threshold) {
+        ProductObserver obs = observer;
+        if (obs == null) return;
+        if (name) obs.nameChanged(this);
+        if (threshold) obs.thresholdChanged(this);
     }
 
     public void addStock(int qty) {
-        if (qty <= 0) throw new IllegalArgumentException("Qty must be > 0");
-        stock += qty;
+        VersionClock c = clock;
+        if (c == null) {
+            putStock(qty, 0);
+            return;
+        }
+        long op = c.enter();
+        try {
+            putStock(qty, c.next());
+        } finally {
+            c.exit(op);
+        }
     }
 
     public void removeStock(int qty) {
-        if (qty <= 0) throw new IllegalArgumentException("Qty must be > 0");
-        if (qty > stock) throw new IllegalArgumentException("Not enough stock");
-        stock -= qty;
+        if (!tryRemoveStock(qty)) throw new IllegalArgumentException("Not enough stock");
+    }
+
+    public boolean tryRemoveStock(int qty) {
+        VersionClock c = clock;
+        if (c == null) return takeStock(qty, 0) != NO_STOCK;
+        long op = c.enter();
+        try {
+            return takeStock(qty, c.next()) != NO_STOCK;
+        } finally {
+            c.exit(op);
+        }
     }
 
     public boolean isLowStock() {
-        return stock <= lowStockThreshold;
+        return getStock() <= lowStockThreshold;
+    }
+
+    long stockWord() { return stock.word; }
+
+    int skuId() { return skuId; }
+
+    void bindSkuId(int id) { skuId = id; }
+
+    SkuTable.NameRef nameRef() { return nameRef; }
+
+    void nameRef(SkuTable.NameRef ref) { nameRef = ref; }
+
+    // version is the calling mutation's, from the store's VersionClock (0 outside a store).
+    long putStock(int qty, long version) {
+        if (qty <= 0) throw new IllegalArgumentException("Qty must be > 0");
+        long floor = floor();
+        StockChange cur;
+        StockChange next;
+        do {
+            cur = stock;
+            int have = stockOf(cur.word);
+            if (qty > Integer.MAX_VALUE - have) throw new IllegalArgumentException("Stock would overflow");
+            next = new StockChange(nextWord(cur.word, have + qty), qty, version, cur.keep(floor));
+        } while (!STOCK.weakCompareAndSet(this, cur, next));
+        stockChanged(stockOf(cur.word), stockOf(next.word));
+        return next.word;
+    }
+
+    long takeStock(int qty, long version) {
+        if (qty <= 0) throw new IllegalArgumentException("Qty must be > 0");
+        long floor = floor();
+        StockChange cur;
+        StockChange next;
+        do {
+            cur = stock;
+            int have = stockOf(cur.word);
+            if (qty > have) return NO_STOCK;
+            next = new StockChange(nextWord(cur.word, have - qty), -qty, version, cur.keep(floor));
+        } while (!STOCK.weakCompareAndSet(this, cur, next));
+        stockChanged(stockOf(cur.word), stockOf(next.word));
+        return next.word;
+    }
+
+    // Replay path: keeps whichever word has the newer change counter, so records may arrive in any order.
+    void restoreStock(long word) {
+        StockChange cur;
+        do {
+            cur = stock;
+            if (!isNewer(word, cur.word)) return;
+        } while (!STOCK.weakCompareAndSet(this, cur, new StockChange(word, 0, 0, null)));
+        stockChanged(stockOf(cur.word), stockOf(word));
+    }
+
+    private long floor() {
+        VersionClock c = clock;
+        return c == null ? Long.MAX_VALUE : c.floor();
+    }
+
+    void added(VersionClock c, long version) {
+        clock = c;
+        addedVersion = version;
+        removedVersion = Long.MAX_VALUE;
+    }
+
+    void removed(long version) {
+        removedVersion = version;
+    }
+
+    long removedVersion() {
+        return removedVersion;
+    }
+
+    boolean inCatalogAt(long version) {
+        return addedVersion <= version && version < removedVersion;
+    }
+
+    // Units on hand as of a snapshot view's version: the current count with every later change undone.
+    int stockAt(long version) {
+        StockChange c = stock;
+        int units = stockOf(c.word);
+        for (; c != null && c.newest > version; c = c.prev) {
+            if (c.version > version) units -= c.delta;
+        }
+        return units;
+    }
+
+    // A detached copy as a snapshot view at this version sees the product.
+    Product asOf(long version) {
+        String n = name;
+        Money p = price;
+        int t = lowStockThreshold;
+        for (DetailsChange h = history; h != null && h.version > version; h = h.prev) {
+            n = h.name;
+            p = h.price;
+            t = h.lowStockThreshold;
+        }
+        return new Product(sku, n, p, stockAt(version), t);
+    }
+
+    static int stockOf(long word) {
+        return (int) word;
+    }
+
+    private static long nextWord(long word, int stock) {
+        return ((word & ~0xFFFFFFFFL) + VERSION_ONE) | (stock & 0xFFFFFFFFL);
+    }
+
+    private static boolean isNewer(long a, long b) {
+        return (int) ((a >>> 32) - (b >>> 32)) > 0;
+    }
+
+    // One stock change: the word it left, and the changes before it while an open view may still have to undo them.
+    // Replaced whole by each change, so a reader gets the word and its history from one read. Changes from concurrent
+    // mutations can land out of version order; newest covers this node and everything below it.
+    private static final class StockChange {
+        final long word;
+        final int delta;
+        final long version;
+        final long newest;
+        final StockChange prev;
+
+        StockChange(long word, int delta, long version, StockChange prev) {
+            this.word = word;
+            this.delta = delta;
+            this.version = version;
+            this.newest = prev == null ? version : Math.max(version, prev.newest);
+            this.prev = prev;
+        }
+
+        // This change and those below it, unless every open view already sees all of them.
+        StockChange keep(long floor) {
+            return newest > floor ? this : null;
+        }
+    }
+
+    // Name, price and threshold as they were before the change numbered version. Changes are made under the
+    // product's monitor, so the chain is in version order.
+    private static final class DetailsChange {
+        final long version;
+        final String name;
+        final Money price;
+        final int lowStockThreshold;
+        final DetailsChange prev;
+
+        DetailsChange(long version, String name, Money price, int lowStockThreshold, DetailsChange prev) {
+            this.version = version;
+            this.name = name;
+            this.price = price;
+            this.lowStockThreshold = lowStockThreshold;
+            this.prev = prev;
+        }
+    }
+
+    ProductObserver observer() { return observer; }
+
+    synchronized void attach(ProductObserver obs) {
+        if (observer != null) throw new IllegalArgumentException("Product already belongs to a store");
+        observer = obs;
+    }
+
+    synchronized void detach(ProductObserver obs) {
+        if (observer == obs) observer = null;
+    }
+
+    private void stockChanged(int before, int after) {
+        ProductObserver obs = observer;
+        if (obs != null) obs.stockChanged(this, before, after);
     }
 
     @Override
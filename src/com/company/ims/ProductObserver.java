@@ -0,0 +1,9 @@
+package com.company.ims;
+
+interface ProductObserver {
+    void stockChanged(Product p, int before, int after);
+
+    void thresholdChanged(Product p);
+
+    void nameChanged(Product p);
+}
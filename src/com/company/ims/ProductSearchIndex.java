@@ -0,0 +1,330 @@
+package com.company.ims;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Inverted index from the lowercase words of each live product's name and SKU to the products' SkuTable ids. The
+// words are kept sorted, so a prefix query walks the words that start with it in order, exact word first. Writers
+// take the index's lock; queries read without locking, and a product being renamed may match by either name until
+// its reindex is done.
+final class ProductSearchIndex {
+    // Hits a query ranks before cutting to its limit, at least; the rest of the matches are never looked at.
+    private static final int MIN_CANDIDATES = 64;
+    // Postings a query reads before giving up on finding more hits, so a selective multi-word query stays bounded.
+    private static final int MAX_SCAN = 20_000;
+    // Words a query word may complete before it is checked against names rather than postings ("b" completes most).
+    private static final int MAX_EXPAND = 64;
+
+    // A word's ids, ascending. Never changed once published: appends write past size into a shared array and publish
+    // a longer Postings; inserts and removals copy.
+    private static final class Postings {
+        final int[] ids;
+        final int size;
+
+        Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    private static final class Hit {
+        final Product product;
+        final int exactWords;
+        final boolean leading;
+
+        Hit(Product product, int exactWords, boolean leading) {
+            this.product = product;
+            this.exactWords = exactWords;
+            this.leading = leading;
+        }
+    }
+
+    // Exact words first, then hits whose name starts with the first query word, then shorter names.
+    private static final Comparator<Hit> RANK = Comparator.<Hit>comparingInt(h -> -h.exactWords)
+            .thenComparing(h -> !h.leading)
+            .thenComparingInt(h -> h.product.getName().length())
+            .thenComparing(h -> h.product.getSku());
+
+    private final SkuTable skuTable;
+    private final ConcurrentSkipListMap<String, Postings> words = new ConcurrentSkipListMap<>();
+    // The name each SKU id is indexed under, null when it is not indexed. Guarded by this.
+    private String[] indexedNames = new String[64];
+
+    ProductSearchIndex(SkuTable skuTable) {
+        this.skuTable = skuTable;
+    }
+
+    // Brings p's words up to its current name, or drops them if p is no longer live. Safe to call any number of
+    // times and in any order with renames, since it only ever looks at the product's state now.
+    synchronized void reindex(Product p) {
+        int id = p.skuId();
+        if (id < 0) return;
+        if (id >= indexedNames.length) indexedNames = Arrays.copyOf(indexedNames, Math.max(id + 1, indexedNames.length * 2));
+        Product live = skuTable.product(id);
+        // The SKU went to a new product, which reindexes itself.
+        if (live != null && live != p) return;
+        String before = indexedNames[id];
+        String now = live == p ? p.getName() : null;
+        if (before == null ? now == null : before.equals(now)) return;
+
+        Set<String> old = before == null ? Set.of() : words(p.getSku(), before);
+        Set<String> cur = now == null ? Set.of() : words(p.getSku(), now);
+        for (String w : old) if (!cur.contains(w)) unlink(w, id);
+        for (String w : cur) if (!old.contains(w)) link(w, id);
+        indexedNames[id] = now;
+    }
+
+    private void link(String word, int id) {
+        Postings p = words.get(word);
+        if (p == null) {
+            words.put(word, new Postings(new int[] { id }, 1));
+            return;
+        }
+        int at = -Arrays.binarySearch(p.ids, 0, p.size, id) - 1;
+        if (at < 0) return;
+        int[] ids;
+        if (at == p.size && p.size < p.ids.length) {
+            // New SKUs get the highest ids, so loading a catalog only ever appends.
+            ids = p.ids;
+        } else {
+            ids = new int[at == p.size ? p.size * 2 : p.size + 1];
+            System.arraycopy(p.ids, 0, ids, 0, at);
+            System.arraycopy(p.ids, at, ids, at + 1, p.size - at);
+        }
+        ids[at] = id;
+        words.put(word, new Postings(ids, p.size + 1));
+    }
+
+    private void unlink(String word, int id) {
+        Postings p = words.get(word);
+        if (p == null) return;
+        int at = Arrays.binarySearch(p.ids, 0, p.size, id);
+        if (at < 0) return;
+        if (p.size == 1) {
+            words.remove(word);
+            return;
+        }
+        int[] ids = new int[p.size - 1];
+        System.arraycopy(p.ids, 0, ids, 0, at);
+        System.arraycopy(p.ids, at + 1, ids, at, p.size - at - 1);
+        words.put(word, new Postings(ids, ids.length));
+    }
+
+    // One query word: its exact postings and those of up to MAX_EXPAND words it completes. Past that it is open, and
+    // checked against the product's name and SKU instead.
+    private final class Term {
+        final String text;
+        final Postings exact;
+        final List<Postings> lists = new ArrayList<>();
+        boolean open;
+        // Where seek has got to in each list.
+        int[] at;
+
+        Term(String text) {
+            this.text = text;
+            this.exact = words.get(text);
+            if (exact != null) lists.add(exact);
+            for (Map.Entry<String, Postings> e : words.tailMap(text, false).entrySet()) {
+                if (!e.getKey().startsWith(text)) break;
+                if (lists.size() == MAX_EXPAND) {
+                    open = true;
+                    break;
+                }
+                lists.add(e.getValue());
+            }
+            at = new int[lists.size()];
+        }
+
+        // The smallest id >= from in any of the lists, Integer.MAX_VALUE past the end. Only moves forward, galloping
+        // so that skipping a long run costs a logarithm of its length.
+        int seek(int from) {
+            int min = Integer.MAX_VALUE;
+            for (int l = 0; l < lists.size(); l++) {
+                Postings p = lists.get(l);
+                int lo = at[l];
+                if (lo < p.size && p.ids[lo] < from) {
+                    int step = 1;
+                    int hi = lo + 1;
+                    while (hi < p.size && p.ids[hi] < from) {
+                        lo = hi;
+                        step <<= 1;
+                        hi = lo + step;
+                    }
+                    int i = Arrays.binarySearch(p.ids, lo + 1, Math.min(hi, p.size), from);
+                    lo = i >= 0 ? i : -i - 1;
+                    at[l] = lo;
+                }
+                if (lo < p.size) min = Math.min(min, p.ids[lo]);
+            }
+            return min;
+        }
+
+        boolean completedBy(Product p) {
+            for (String w : tokens(p.getName())) if (w.startsWith(text)) return true;
+            for (String w : tokens(p.getSku())) if (w.startsWith(text)) return true;
+            return false;
+        }
+    }
+
+    // Up to limit live products matching every word of the query, each query word as a prefix of some word of the
+    // product's name or SKU. A product whose SKU is exactly the query comes first.
+    List<Product> search(String query, int limit, boolean inStockOnly) {
+        if (query == null || query.isBlank()) throw new IllegalArgumentException("Search text required");
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be > 0");
+        List<String> texts = tokens(query);
+        List<Product> out = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+
+        Product exact = skuTable.find(query.trim());
+        if (exact != null && (!inStockOnly || exact.getStock() > 0)) {
+            out.add(exact);
+            seen.add(exact.skuId());
+        }
+        if (texts.isEmpty() || out.size() == limit) return out;
+
+        List<Term> terms = new ArrayList<>();
+        List<Term> joined = new ArrayList<>();
+        for (String t : new LinkedHashSet<>(texts)) {
+            Term term = new Term(t);
+            terms.add(term);
+            if (!term.open) joined.add(term);
+        }
+        Hits hits = new Hits(limit - out.size(), terms.size());
+        if (terms.size() > 1 && !joined.isEmpty()) join(terms, joined, texts.get(0), inStockOnly, seen, hits);
+        else walk(terms, texts.get(0), inStockOnly, seen, hits);
+
+        hits.list.sort(RANK);
+        for (Hit h : hits.list) {
+            if (out.size() == limit) break;
+            out.add(h.product);
+        }
+        return out;
+    }
+
+    // The hits found so far, full once there are enough to rank or once limit of them can not be outranked.
+    private static final class Hits {
+        final List<Hit> list = new ArrayList<>();
+        final int limit;
+        final int wanted;
+        final int terms;
+        int best;
+
+        Hits(int limit, int terms) {
+            this.limit = limit;
+            this.wanted = Math.max(MIN_CANDIDATES, limit * 4);
+            this.terms = terms;
+        }
+
+        // True when no more are needed.
+        boolean add(Hit h) {
+            list.add(h);
+            if (h.exactWords == terms && h.leading) best++;
+            return best == limit || list.size() == wanted;
+        }
+    }
+
+    // Goes through the words starting with the longest query word in order, so exact matches of it are found first,
+    // and checks the other words per hit.
+    private void walk(List<Term> terms, String first, boolean inStockOnly, Set<Integer> seen, Hits hits) {
+        Term lead = terms.get(0);
+        for (Term t : terms) if (t.text.length() > lead.text.length()) lead = t;
+        int scanned = 0;
+        for (Map.Entry<String, Postings> e : words.tailMap(lead.text).entrySet()) {
+            if (!e.getKey().startsWith(lead.text)) break;
+            int whole = e.getKey().length() == lead.text.length() ? 1 : 0;
+            Postings postings = e.getValue();
+            for (int i = 0; i < postings.size; i++) {
+                if (++scanned > MAX_SCAN) return;
+                int id = postings.ids[i];
+                if (seen.contains(id)) continue;
+                Hit h = hit(id, terms, lead, whole, first, inStockOnly);
+                if (h == null) continue;
+                seen.add(id);
+                if (hits.add(h)) return;
+            }
+        }
+    }
+
+    // Leapfrogs the sorted postings of the query words against each other, so a rare combination of common words
+    // skips the long runs in between instead of reading them.
+    private void join(List<Term> terms, List<Term> joined, String first, boolean inStockOnly, Set<Integer> seen,
+            Hits hits) {
+        int id = 0;
+        int agreed = 0;
+        int t = 0;
+        for (int steps = 0; steps < MAX_SCAN; steps++) {
+            int next = joined.get(t).seek(id);
+            if (next == Integer.MAX_VALUE) break;
+            if (next != id) {
+                id = next;
+                agreed = 0;
+            }
+            if (++agreed == joined.size()) {
+                Hit h = seen.contains(id) ? null : hit(id, terms, null, 0, first, inStockOnly);
+                if (h != null) {
+                    seen.add(id);
+                    if (hits.add(h)) return;
+                }
+                if (id == Integer.MAX_VALUE - 1) break;
+                id++;
+                agreed = 0;
+            }
+            t = (t + 1) % joined.size();
+        }
+    }
+
+    // null unless id is a live product (in stock, if asked) matching every term; lead is already known to match.
+    private Hit hit(int id, List<Term> terms, Term lead, int exactWords, String first, boolean inStockOnly) {
+        Product p = skuTable.product(id);
+        if (p == null || (inStockOnly && p.getStock() <= 0)) return null;
+        for (Term t : terms) {
+            if (t == lead) continue;
+            if (t.exact != null && t.exact.contains(id)) {
+                exactWords++;
+            } else if (t.open ? !t.completedBy(p) : !inAny(t.lists, id)) {
+                return null;
+            }
+        }
+        return new Hit(p, exactWords, p.getName().regionMatches(true, 0, first, 0, first.length()));
+    }
+
+    private static boolean inAny(List<Postings> lists, int id) {
+        for (Postings p : lists) if (p.contains(id)) return true;
+        return false;
+    }
+
+    private static Set<String> words(String sku, String name) {
+        Set<String> out = new LinkedHashSet<>(tokens(name));
+        out.addAll(tokens(sku));
+        return out;
+    }
+
+    // Runs of letters and digits, lowercased.
+    static List<String> tokens(String s) {
+        List<String> out = new ArrayList<>(4);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < s.length(); ) {
+            int c = s.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isLetterOrDigit(c)) {
+                b.appendCodePoint(Character.toLowerCase(c));
+            } else if (b.length() > 0) {
+                out.add(b.toString());
+                b.setLength(0);
+            }
+        }
+        if (b.length() > 0) out.add(b.toString());
+        return out;
+    }
+}
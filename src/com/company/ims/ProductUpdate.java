@@ -0,0 +1,36 @@
+package com.company.ims;
+
+import java.math.BigDecimal;
+
+// One product's part of a bulk catalog update: a new price, a new low-stock threshold and units to add, any of
+// which may be left out (null, null and 0).
+public class ProductUpdate {
+    private final String sku;
+    private final BigDecimal price;
+    private final Integer lowStockThreshold;
+    private final int restock;
+
+    public ProductUpdate(String sku, BigDecimal price, Integer lowStockThreshold, int restock) {
+        this.sku = sku;
+        this.price = price;
+        this.lowStockThreshold = lowStockThreshold;
+        this.restock = restock;
+    }
+
+    public static ProductUpdate price(String sku, BigDecimal price) {
+        return new ProductUpdate(sku, price, null, 0);
+    }
+
+    public static ProductUpdate lowStockThreshold(String sku, int threshold) {
+        return new ProductUpdate(sku, null, threshold, 0);
+    }
+
+    public static ProductUpdate restock(String sku, int qty) {
+        return new ProductUpdate(sku, null, null, qty);
+    }
+
+    public String getSku() { return sku; }
+    public BigDecimal getPrice() { return price; }
+    public Integer getLowStockThreshold() { return lowStockThreshold; }
+    public int getRestock() { return restock; }
+}
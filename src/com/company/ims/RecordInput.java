@@ -0,0 +1,54 @@
+package com.company.ims;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+final class RecordInput {
+    private final ByteBuffer buf;
+
+    RecordInput(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    boolean hasRemaining() { return buf.hasRemaining(); }
+
+    int remaining() { return buf.remaining(); }
+
+    int position() { return buf.position(); }
+
+    int readByte() { return buf.get() & 0xFF; }
+
+    int readInt() { return buf.getInt(); }
+
+    long readLong() { return buf.getLong(); }
+
+    long readVarLong() {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    int readVarInt() {
+        long v = readVarLong();
+        if (v < 0 || v > Integer.MAX_VALUE) throw new IllegalStateException("Malformed length: " + v);
+        return (int) v;
+    }
+
+    String readString() {
+        int n = readVarInt();
+        String s;
+        if (buf.hasArray()) {
+            s = new String(buf.array(), buf.arrayOffset() + buf.position(), n, StandardCharsets.UTF_8);
+            buf.position(buf.position() + n);
+        } else {
+            byte[] b = new byte[n];
+            buf.get(b);
+            s = new String(b, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+}
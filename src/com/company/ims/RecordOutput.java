@@ -0,0 +1,80 @@
+package com.company.ims;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+final class RecordOutput {
+    private byte[] buf;
+    private int len;
+
+    RecordOutput(int initialCapacity) {
+        this.buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    RecordOutput reset() {
+        len = 0;
+        return this;
+    }
+
+    int length() { return len; }
+
+    RecordOutput writeByte(int v) {
+        ensure(1);
+        buf[len++] = (byte) v;
+        return this;
+    }
+
+    RecordOutput writeInt(int v) {
+        ensure(4);
+        buf[len++] = (byte) (v >>> 24);
+        buf[len++] = (byte) (v >>> 16);
+        buf[len++] = (byte) (v >>> 8);
+        buf[len++] = (byte) v;
+        return this;
+    }
+
+    RecordOutput writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        return writeInt((int) v);
+    }
+
+    RecordOutput writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[len++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[len++] = (byte) v;
+        return this;
+    }
+
+    RecordOutput writeString(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(b.length);
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, len, b.length);
+        len += b.length;
+        return this;
+    }
+
+    int crc() {
+        CRC32C crc = new CRC32C();
+        crc.update(buf, 0, len);
+        return (int) crc.getValue();
+    }
+
+    void updateChecksum(Checksum checksum) {
+        checksum.update(buf, 0, len);
+    }
+
+    void copyTo(ByteBuffer dst) {
+        dst.put(buf, 0, len);
+    }
+
+    private void ensure(int n) {
+        if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+    }
+}
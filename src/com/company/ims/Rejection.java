@@ -0,0 +1,39 @@
+package com.company.ims;
+
+// Why a store operation was turned down.
+public enum Rejection {
+    NOT_ENOUGH_STOCK,
+    SKU_NOT_FOUND,
+    ORDER_NOT_FOUND,
+    NOT_YOUR_ORDER,
+    ILLEGAL_TRANSITION,
+    BAD_CREDENTIALS,
+    INVALID_REQUEST,
+    OTHER;
+
+    // Keys off the exception types and messages Store and Order throw; anything unrecognised counts as OTHER.
+    static Rejection of(RuntimeException ex) {
+        Rejection r = byMessage(ex.getMessage());
+        if (r != null) return r;
+        if (ex instanceof IllegalStateException) return ILLEGAL_TRANSITION;
+        if (ex instanceof IllegalArgumentException || ex instanceof ArithmeticException) return INVALID_REQUEST;
+        return OTHER;
+    }
+
+    // A cart, order or row a batch call turned down, from the error it reports for it.
+    static Rejection ofItem(String error) {
+        Rejection r = byMessage(error);
+        return r != null ? r : INVALID_REQUEST;
+    }
+
+    private static Rejection byMessage(String msg) {
+        if (msg == null) return null;
+        if (msg.startsWith("Not enough stock")) return NOT_ENOUGH_STOCK;
+        if (msg.startsWith("SKU not found")) return SKU_NOT_FOUND;
+        if (msg.startsWith("Order not found")) return ORDER_NOT_FOUND;
+        if (msg.startsWith("Not your order")) return NOT_YOUR_ORDER;
+        if (msg.startsWith("From ") || msg.startsWith("Cannot cancel") || msg.startsWith("Now at status"))
+            return ILLEGAL_TRANSITION;
+        return null;
+    }
+}
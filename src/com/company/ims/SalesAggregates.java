@@ -0,0 +1,132 @@
+package com.company.ims;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running sales totals for a Store, updated as orders are placed and change status so dashboards read them without
+// walking the order history. Revenue, units and customer spend count every order that is not CANCELLED, and a
+// cancellation takes back exactly what the placement added; archived orders stay counted. Each counter is a striped
+// LongAdder, so a read is cheap but not a point-in-time picture across counters (open a StoreView for that).
+public final class SalesAggregates {
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private static final class SkuSales {
+        final LongAdder units = new LongAdder();
+        final LongAdder revenueMinor = new LongAdder();
+    }
+
+    private final SkuTable skus;
+    private final LongAdder[] ordersByStatus = new LongAdder[STATUSES.length];
+    private final LongAdder revenueMinor = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> spendByCustomer = new ConcurrentHashMap<>();
+    // Indexed by SKU id in skus. Slots are filled and the array grown only under this object's lock, so a copy never
+    // loses a slot another thread just filled.
+    private volatile AtomicReferenceArray<SkuSales> bySku = new AtomicReferenceArray<>(64);
+
+    SalesAggregates(SkuTable skus) {
+        this.skus = skus;
+        for (int i = 0; i < ordersByStatus.length; i++) ordersByStatus[i] = new LongAdder();
+    }
+
+    public long getOrderCount(OrderStatus status) {
+        if (status == null) throw new IllegalArgumentException("Status required");
+        return ordersByStatus[status.ordinal()].sum();
+    }
+
+    public Map<OrderStatus, Long> getOrdersByStatus() {
+        Map<OrderStatus, Long> out = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus s : STATUSES) out.put(s, ordersByStatus[s.ordinal()].sum());
+        return out;
+    }
+
+    public Money getRevenue() {
+        return Money.ofMinor(revenueMinor.sum());
+    }
+
+    public Money getRevenue(String sku) {
+        SkuSales s = find(sku);
+        return Money.ofMinor(s == null ? 0 : s.revenueMinor.sum());
+    }
+
+    public long getUnitsSold(String sku) {
+        SkuSales s = find(sku);
+        return s == null ? 0 : s.units.sum();
+    }
+
+    public Money getCustomerSpend(String username) {
+        LongAdder spend = username == null ? null : spendByCustomer.get(username.trim());
+        return Money.ofMinor(spend == null ? 0 : spend.sum());
+    }
+
+    // Order counts per status and total revenue on one line.
+    public String dump() {
+        StringBuilder sb = new StringBuilder(128);
+        for (OrderStatus s : STATUSES) sb.append(s.name()).append('=').append(ordersByStatus[s.ordinal()].sum()).append(' ');
+        return sb.append("revenue=").append(getRevenue()).append('\n').toString();
+    }
+
+    void placed(Order o) {
+        ordersByStatus[OrderStatus.PLACED.ordinal()].increment();
+        addSales(o, 1);
+    }
+
+    // From the store for every status change; Order's status can only be set through it. Also used on replay, where
+    // a journal record may move an order out of CANCELLED again.
+    void transitioned(Order o, OrderStatus from, OrderStatus to) {
+        if (from == to) return;
+        ordersByStatus[from.ordinal()].decrement();
+        ordersByStatus[to.ordinal()].increment();
+        if (to == OrderStatus.CANCELLED) addSales(o, -1);
+        else if (from == OrderStatus.CANCELLED) addSales(o, 1);
+    }
+
+    // An order read back from disk, counted at whatever status it was saved with.
+    void restored(Order o) {
+        ordersByStatus[o.getStatus().ordinal()].increment();
+        if (o.getStatus() != OrderStatus.CANCELLED) addSales(o, 1);
+    }
+
+    private void addSales(Order o, int sign) {
+        for (int i = 0; i < o.lineCount(); i++) {
+            SkuSales s = slot(o.skuId(i));
+            s.units.add(sign * (long) o.quantity(i));
+            s.revenueMinor.add(sign * o.unitPriceMinor(i) * o.quantity(i));
+        }
+        long total = sign * o.total().minorUnits();
+        revenueMinor.add(total);
+        LongAdder spend = spendByCustomer.get(o.getCustomerUsername());
+        if (spend == null) spend = spendByCustomer.computeIfAbsent(o.getCustomerUsername(), u -> new LongAdder());
+        spend.add(total);
+    }
+
+    private SkuSales find(String sku) {
+        int id = sku == null ? -1 : skus.skuId(sku.trim());
+        AtomicReferenceArray<SkuSales> a = bySku;
+        return id < 0 || id >= a.length() ? null : a.get(id);
+    }
+
+    private SkuSales slot(int skuId) {
+        AtomicReferenceArray<SkuSales> a = bySku;
+        SkuSales s = skuId < a.length() ? a.get(skuId) : null;
+        return s != null ? s : addSlot(skuId);
+    }
+
+    private synchronized SkuSales addSlot(int skuId) {
+        AtomicReferenceArray<SkuSales> a = bySku;
+        if (skuId >= a.length()) {
+            AtomicReferenceArray<SkuSales> grown = new AtomicReferenceArray<>(Math.max(a.length() * 2, skuId + 1));
+            for (int i = 0; i < a.length(); i++) grown.set(i, a.get(i));
+            bySku = grown;
+            a = grown;
+        }
+        SkuSales s = a.get(skuId);
+        if (s == null) {
+            s = new SkuSales();
+            a.set(skuId, s);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,34 @@
+package com.company.ims;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Stock one shard is holding for a cart that spans shards, between prepare and commit or abort. The items carry the
+// names and prices the shard had when it took the stock.
+public class ShardReservation {
+    private final long id;
+    private final List<OrderItem> items;
+    private final long[] words;
+
+    ShardReservation(long id, List<OrderItem> items, long[] words) {
+        this.id = id;
+        this.items = Collections.unmodifiableList(items);
+        this.words = words;
+    }
+
+    public long getId() { return id; }
+    public List<OrderItem> getItems() { return items; }
+
+    // Stock word each item left behind, in item order.
+    long word(int i) {
+        return words[i];
+    }
+
+    Map<String, Integer> quantities() {
+        Map<String, Integer> out = new TreeMap<>();
+        for (OrderItem it : items) out.put(it.getSku(), it.getQuantity());
+        return out;
+    }
+}
@@ -0,0 +1,174 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+// A catalog split by SKU hash over independent shards, each with its own maps, locks and order-id range (an order
+// id's top bits name the shard that recorded it). A cart within one shard is placed there directly. A cart spanning
+// shards is reserved on every shard involved (prepare), recorded as one order on the lowest-numbered of them, and then
+// committed; if any shard rejects its part, the reservations already made are aborted and the stock goes back.
+public class ShardedStore implements AutoCloseable {
+    public static final int MAX_SHARDS = 1024;
+    private static final int ORDER_ID_SHIFT = 40;
+
+    private final StoreShard[] shards;
+
+    // In-process shards, each an in-memory Store with the seed users and an empty catalog.
+    public ShardedStore(int shardCount) {
+        if (shardCount <= 0 || shardCount > MAX_SHARDS)
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        shards = new StoreShard[shardCount];
+        for (int k = 0; k < shardCount; k++) {
+            Store s = new Store(true);
+            s.restoreNextOrderId(firstOrderId(k));
+            shards[k] = new LocalShard(s);
+        }
+    }
+
+    // Shard k must number its orders from firstOrderId(k) up.
+    public ShardedStore(List<? extends StoreShard> shards) {
+        if (shards == null || shards.isEmpty() || shards.size() > MAX_SHARDS)
+            throw new IllegalArgumentException("Between 1 and " + MAX_SHARDS + " shards required");
+        this.shards = shards.toArray(new StoreShard[0]);
+    }
+
+    public static long firstOrderId(int shard) {
+        return ((long) shard << ORDER_ID_SHIFT) + 1000;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public StoreShard shard(int index) {
+        return shards[index];
+    }
+
+    public int shardOf(String sku) {
+        int h = sku.trim().hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    public void addProduct(Product p) {
+        if (p == null) throw new IllegalArgumentException("Product required");
+        shards[shardOf(p.getSku())].addProduct(p);
+    }
+
+    public Optional<Product> findProduct(String sku) {
+        if (sku == null) return Optional.empty();
+        return shards[shardOf(sku)].findProduct(sku);
+    }
+
+    public int restock(String sku, int qty) {
+        if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU required");
+        return shards[shardOf(sku)].restock(sku, qty);
+    }
+
+    // Every shard's products, in SKU order.
+    public List<Product> listProducts() {
+        List<Product> all = new ArrayList<>();
+        for (StoreShard s : shards) all.addAll(s.listProducts());
+        all.sort(Comparator.comparing(Product::getSku));
+        return all;
+    }
+
+    public Order placeOrder(String username, Map<String, Integer> skuToQty) {
+        Map<Integer, Map<String, Integer>> parts = split(Store.normalizeCart(username, skuToQty));
+        if (parts.size() == 1) {
+            Map.Entry<Integer, Map<String, Integer>> only = parts.entrySet().iterator().next();
+            return shards[only.getKey()].placeOrder(username, only.getValue());
+        }
+
+        List<Integer> prepared = new ArrayList<>(parts.size());
+        List<ShardReservation> held = new ArrayList<>(parts.size());
+        Order o = null;
+        try {
+            for (Map.Entry<Integer, Map<String, Integer>> part : parts.entrySet()) {
+                held.add(shards[part.getKey()].prepare(part.getValue()));
+                prepared.add(part.getKey());
+            }
+            o = shards[prepared.get(0)].recordOrder(username, held);
+        } finally {
+            if (o == null) {
+                for (int i = 0; i < held.size(); i++) shards[prepared.get(i)].abort(held.get(i));
+            }
+        }
+        for (int i = 0; i < held.size(); i++) shards[prepared.get(i)].commit(held.get(i));
+        return o;
+    }
+
+    public Optional<Order> findOrder(long id) {
+        StoreShard s = shardForOrder(id);
+        return s == null ? Optional.empty() : s.findOrder(id);
+    }
+
+    // Oldest first across every shard.
+    public List<Order> listOrdersForUser(String username) {
+        List<Order> all = new ArrayList<>();
+        for (StoreShard s : shards) all.addAll(s.listOrdersForUser(username));
+        all.sort(Comparator.comparing(Order::getCreatedAt).thenComparingLong(Order::getId));
+        return all;
+    }
+
+    public void cancelOrderAsCustomer(String username, long orderId) {
+        int home = orderShard(orderId);
+        if (home < 0) throw new IllegalArgumentException("Order not found");
+        shards[home].cancelOrderAsCustomer(username, orderId);
+        releaseElsewhere(home, orderId);
+    }
+
+    public void updateOrderStatusAsAdmin(long orderId, OrderStatus newStatus) {
+        int home = orderShard(orderId);
+        if (home < 0) throw new IllegalArgumentException("Order not found");
+        shards[home].updateOrderStatusAsAdmin(orderId, newStatus);
+        if (newStatus == OrderStatus.CANCELLED) releaseElsewhere(home, orderId);
+    }
+
+    // The home shard restocked its own lines when it cancelled the order; the rest go back to their shards.
+    private void releaseElsewhere(int home, long orderId) {
+        Order o = shards[home].findOrder(orderId).orElseThrow(() -> new IllegalArgumentException("Order not found"));
+        Map<Integer, Map<String, Integer>> lines = new TreeMap<>();
+        for (OrderItem it : o.getItems()) {
+            int k = shardOf(it.getSku());
+            if (k != home) lines.computeIfAbsent(k, x -> new TreeMap<>()).put(it.getSku(), it.getQuantity());
+        }
+        for (Map.Entry<Integer, Map<String, Integer>> e : lines.entrySet()) shards[e.getKey()].release(e.getValue());
+    }
+
+    private Map<Integer, Map<String, Integer>> split(Map<String, Integer> cart) {
+        Map<Integer, Map<String, Integer>> parts = new TreeMap<>();
+        for (Map.Entry<String, Integer> e : cart.entrySet()) {
+            parts.computeIfAbsent(shardOf(e.getKey()), k -> new TreeMap<>()).put(e.getKey(), e.getValue());
+        }
+        return parts;
+    }
+
+    private StoreShard shardForOrder(long id) {
+        int k = orderShard(id);
+        return k < 0 ? null : shards[k];
+    }
+
+    private int orderShard(long id) {
+        long k = id >>> ORDER_ID_SHIFT;
+        return k < shards.length ? (int) k : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException first = null;
+        for (StoreShard s : shards) {
+            try {
+                s.close();
+            } catch (IOException ex) {
+                if (first == null) first = ex;
+                else first.addSuppressed(ex);
+            }
+        }
+        if (first != null) throw first;
+    }
+}
@@ -0,0 +1,129 @@
+package com.company.ims;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Dense int ids for a store's SKU and product-name strings, handed out the first time a string is seen and never
+// reused, plus the live product behind each SKU id (null once removed). Order lines keep these ints instead of
+// strings and objects; looking a SKU up is one hash probe and one array read.
+final class SkuTable {
+    // A product's last-seen name and its id in one table, so placing an order does not hash the name again.
+    static final class NameRef {
+        final SkuTable table;
+        final String name;
+        final int id;
+
+        NameRef(SkuTable table, String name, int id) {
+            this.table = table;
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Integer> skuIds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> customers = new ConcurrentHashMap<>();
+    // Grown by copying under the table's lock; an id is only handed out after its slot is filled.
+    private volatile String[] skus = new String[64];
+    private volatile String[] names = new String[64];
+    private volatile AtomicReferenceArray<Product> products = new AtomicReferenceArray<>(64);
+    private int skuCount;
+    private int nameCount;
+
+    // -1 when the SKU has never been seen.
+    int skuId(String sku) {
+        Integer id = skuIds.get(sku);
+        return id == null ? -1 : id;
+    }
+
+    int internSku(String sku) {
+        Integer id = skuIds.get(sku);
+        return id != null ? id : addSku(sku);
+    }
+
+    int internName(String name) {
+        Integer id = nameIds.get(name);
+        return id != null ? id : addName(name);
+    }
+
+    // Cached on the product until its name changes (checked by identity, which is what setName changes).
+    int nameId(Product p) {
+        String name = p.getName();
+        NameRef ref = p.nameRef();
+        if (ref != null && ref.table == this && ref.name == name) return ref.id;
+        int id = internName(name);
+        p.nameRef(new NameRef(this, name, id));
+        return id;
+    }
+
+    // The product's id here; the cached one only counts while this table still maps it to the product.
+    int skuId(Product p) {
+        int id = p.skuId();
+        if (id >= 0 && id < skuCapacity() && product(id) == p) return id;
+        return internSku(p.getSku());
+    }
+
+    private int skuCapacity() {
+        return products.length();
+    }
+
+    // One shared String per customer name, for orders read back from disk.
+    String internCustomer(String username) {
+        String prev = customers.putIfAbsent(username, username);
+        return prev != null ? prev : username;
+    }
+
+    String sku(int id) { return skus[id]; }
+    String name(int id) { return names[id]; }
+
+    Product product(int skuId) {
+        return skuId < 0 ? null : products.get(skuId);
+    }
+
+    Product find(String sku) {
+        Integer id = skuIds.get(sku);
+        return id == null ? null : products.get(id);
+    }
+
+    // Returns false (changing nothing) if another product already holds the SKU.
+    synchronized boolean bind(Product p) {
+        int id = internSku(p.getSku());
+        if (!products.compareAndSet(id, null, p)) return false;
+        p.bindSkuId(id);
+        return true;
+    }
+
+    synchronized void unbind(Product p) {
+        int id = p.skuId();
+        if (id >= 0) products.compareAndSet(id, p, null);
+    }
+
+    private synchronized int addSku(String sku) {
+        Integer id = skuIds.get(sku);
+        if (id != null) return id;
+        int next = skuCount;
+        if (next == skus.length) {
+            AtomicReferenceArray<Product> old = products;
+            AtomicReferenceArray<Product> grown = new AtomicReferenceArray<>(next * 2);
+            for (int i = 0; i < next; i++) grown.set(i, old.get(i));
+            skus = Arrays.copyOf(skus, next * 2);
+            products = grown;
+        }
+        skus[next] = sku;
+        skuCount = next + 1;
+        skuIds.put(sku, next);
+        return next;
+    }
+
+    private synchronized int addName(String name) {
+        Integer id = nameIds.get(name);
+        if (id != null) return id;
+        int next = nameCount;
+        if (next == names.length) names = Arrays.copyOf(names, next * 2);
+        names[next] = name;
+        nameCount = next + 1;
+        nameIds.put(name, next);
+        return next;
+    }
+}
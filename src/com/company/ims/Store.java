@@ -1,132 +1,1379 @@
 package com.company.ims;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class Store implements AutoCloseable {
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50;
+    private static final long DEFAULT_CHECKPOINT_BYTES = 256L << 20;
+    private static final long[] NO_WORDS = new long[0];
+    private static final int ARCHIVE_BATCH = 10_000;
+    // Updates per fork-join leaf in updateProducts.
+    private static final int BULK_GRAIN = 1024;
+    // Order lines a placeOrders or transitionOrders journal record covers at most, so it stays under the record size
+    // limit.
+    private static final int BATCH_RECORD_LINES = 100_000;
 
-public class Store {
     private final Map<String, User> usersByName = new HashMap<>();
-    private final Map<String, Product> productsBySku = new LinkedHashMap<>();
-    private final Map<Long, Order> ordersById = new LinkedHashMap<>();
-    private long nextOrderId = 1000;
+    // SKU order for listings and paging; point lookups go through skuTable.
+    private final ConcurrentSkipListMap<String, Product> productsBySku = new ConcurrentSkipListMap<>();
+    private final SkuTable skuTable = new SkuTable();
+    private final ConcurrentSkipListMap<Long, Order> ordersById = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextOrderId = new AtomicLong(1000);
+    private final OrderIndex orderIndex = new OrderIndex();
+    private final ProductSearchIndex search = new ProductSearchIndex(skuTable);
+    private final LowStockIndex lowStock = new LowStockIndex(skuTable);
+    private final CatalogObserver observer = new CatalogObserver(lowStock, search);
+    private final Object catalogLock = new Object();
+    // Write-held while updateProducts publishes new prices; orders read their prices under an optimistic stamp.
+    private final StampedLock priceLock = new StampedLock();
+    private final StoreMetrics metrics = new StoreMetrics();
+    private final SalesAggregates sales = new SalesAggregates(skuTable);
+    private final VersionClock versions = new VersionClock();
+    // Products removed while a snapshot view was open, kept until no open view can still see them.
+    private final ConcurrentLinkedQueue<Product> removedProducts = new ConcurrentLinkedQueue<>();
+    private StoreJournal journal = StoreJournal.disabled();
+    private volatile StoreEventBus events = StoreEventBus.disabled();
+    private volatile TimingWheel paymentTimeouts;
+    private volatile long paymentTtlMillis;
+    private volatile IdempotencyCache idempotency =
+            new IdempotencyCache(IdempotencyCache.DEFAULT_TTL_MILLIS, IdempotencyCache.DEFAULT_MAX_KEYS);
+    private OrderArchive archive;
+    private volatile ArchivePolicy archivePolicy;
+    private ScheduledExecutorService archiver;
+    private final Object archiveLock = new Object();
 
     public Store() {
+        seedUsers();
+        seedProducts();
+    }
+
+    Store(boolean seedUsers) {
+        if (seedUsers) seedUsers();
+    }
+
+    // Opens (or creates) a durable store in dataDir: the newest snapshot is loaded and the journal written after it
+    // is replayed; a brand-new directory gets the seed catalog.
+    public static Store open(Path dataDir, FsyncPolicy policy) throws IOException {
+        return open(dataDir, policy, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    public static Store open(Path dataDir, FsyncPolicy policy, long syncIntervalMillis, long checkpointBytes) throws IOException {
+        if (dataDir == null) throw new IllegalArgumentException("Data directory required");
+        Store store = new Store(true);
+        // Archived orders are final, so they are known before the snapshot and journal, which may still mention them.
+        store.archive = OrderArchive.open(dataDir.resolve("archive"), store);
+        store.journal = StoreJournal.open(dataDir, policy, syncIntervalMillis, checkpointBytes, store);
+        if (store.productsBySku.isEmpty() && store.ordersById.isEmpty()) store.seedProducts();
+        return store;
+    }
+
+    // Writes a snapshot and drops the journal it covers; writers keep running meanwhile.
+    public void checkpoint() throws IOException {
+        journal.checkpoint(this);
+    }
+
+    private void seedUsers() {
         usersByName.put("admin", new User("admin", "admin123", Role.ADMIN));
         usersByName.put("Omkar", new User("Omkar", "user123", Role.USER));
+    }
 
+    private void seedProducts() {
         addProduct(new Product("SKU-100", "Notebook", new BigDecimal("3.49"), 40, 10));
         addProduct(new Product("SKU-200", "Pen", new BigDecimal("1.25"), 75, 15));
         addProduct(new Product("SKU-300", "Backpack", new BigDecimal("29.99"), 8, 8));
     }
 
+    // Unpaid orders are cancelled (and their stock returned) once they have sat in PLACED for ttl, measured from
+    // createdAt; null or zero turns expiry off. Orders already waiting are picked up too, including replayed ones.
+    public synchronized void setPaymentTimeout(Duration ttl) {
+        if (ttl != null && ttl.isNegative()) throw new IllegalArgumentException("Payment timeout must be >= 0");
+        TimingWheel old = paymentTimeouts;
+        if (old != null) old.close();
+        paymentTimeouts = null;
+        if (ttl == null || ttl.isZero()) {
+            paymentTtlMillis = 0;
+            return;
+        }
+
+        long ttlMillis = ttl.toMillis();
+        long tick = Math.max(10, Math.min(1000, ttlMillis / 256));
+        TimingWheel wheel = new TimingWheel(tick, 512, this::expireUnpaid, "ims-payment-timeouts");
+        paymentTtlMillis = ttlMillis;
+        paymentTimeouts = wheel;
+        // Published before the scan: an order placed from here on is either seen below or scheduled by its placer.
+        for (Order o : ordersById.values()) {
+            if (o.getStatus() == OrderStatus.PLACED) wheel.schedule(o.getId(), o.getCreatedAt().toEpochMilli() + ttlMillis);
+        }
+    }
+
+    public Optional<Duration> getPaymentTimeout() {
+        long ttl = paymentTtlMillis;
+        return ttl == 0 ? Optional.empty() : Optional.of(Duration.ofMillis(ttl));
+    }
+
+    // How long placeOrder remembers an idempotency key, and how many keys it keeps at most (oldest dropped first).
+    // Keys seen so far are forgotten. Keys live in memory only, so a retry after a restart places a new order.
+    public synchronized void setIdempotencyWindow(Duration ttl, int maxKeys) {
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("Idempotency window must be > 0");
+        idempotency = new IdempotencyCache(ttl.toMillis(), maxKeys);
+    }
+
+    public Duration getIdempotencyWindow() {
+        return Duration.ofMillis(idempotency.ttlMillis());
+    }
+
+    // Called after the order is in ordersById.
+    private void schedulePaymentTimeout(Order o) {
+        TimingWheel wheel = paymentTimeouts;
+        if (wheel != null) wheel.schedule(o.getId(), o.getCreatedAt().toEpochMilli() + paymentTtlMillis);
+    }
+
+    // Runs on the wheel thread for one tick's worth of deadlines. Each order is re-checked under its monitor, the
+    // same lock updateOrderStatusAsAdmin holds, so an order paid first stays paid and one expired first can no
+    // longer be paid. One journal sync covers the whole tick.
+    private void expireUnpaid(long[] ids, int count) {
+        long pos = 0;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            for (int i = 0; i < count; i++) {
+                Order o = ordersById.get(ids[i]);
+                if (o == null || o.getStatus() != OrderStatus.PLACED) continue;
+                synchronized (o) {
+                    if (o.getStatus() != OrderStatus.PLACED) continue;
+                    pos = Math.max(pos, transition(o, OrderStatus.CANCELLED));
+                }
+                metrics.expiredOrders.increment();
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+    }
+
+    // Finished orders the policy selects are moved off the heap into an archive file under the data directory, once
+    // per sweep interval (or on archiveOrders()). They stay readable through findOrder and the order listings.
+    // null stops archiving; orders already archived stay there. Only stores opened on a data directory can archive.
+    public synchronized void setArchivePolicy(ArchivePolicy policy) {
+        if (archive == null) throw new IllegalStateException("Archiving needs a store opened on a data directory");
+        if (archiver != null) {
+            archiver.shutdown();
+            try {
+                archiver.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            archiver = null;
+        }
+        archivePolicy = policy;
+        archive.setCacheSize(policy == null ? 0 : policy.getCacheSize());
+        if (policy == null) return;
+
+        archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ims-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = policy.getSweepInterval().toMillis();
+        archiver.scheduleWithFixedDelay(() -> {
+            try {
+                archiveOrders();
+            } catch (IOException | RuntimeException ex) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+            }
+        }, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    public Optional<ArchivePolicy> getArchivePolicy() {
+        return Optional.ofNullable(archivePolicy);
+    }
+
+    // Runs one sweep now and returns how many orders it archived. An order's terminal status is made durable in the
+    // journal before its archive copy is, so recovery never finds an archived order the journal knows as open.
+    public int archiveOrders() throws IOException {
+        ArchivePolicy policy = archivePolicy;
+        if (archive == null || policy == null) return 0;
+        synchronized (archiveLock) {
+            Instant cutoff = policy.getMaxAge() == null ? null : Instant.now().minus(policy.getMaxAge());
+            int keep = policy.getMaxHotOrders();
+            List<Order> batch = new ArrayList<>();
+            int seen = 0;
+            int moved = 0;
+            for (Order o : ordersById.descendingMap().values()) {
+                seen++;
+                if (!o.isTerminal()) continue;
+                // The archive keeps only the final status; an open snapshot view may still need the earlier ones.
+                if (o.changedAfter(versions.floor())) continue;
+                boolean old = cutoff != null && o.getCreatedAt().isBefore(cutoff);
+                boolean overflow = keep >= 0 && seen > keep;
+                if (!old && !overflow) continue;
+                batch.add(o);
+                if (batch.size() == ARCHIVE_BATCH) {
+                    moved += archive(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) moved += archive(batch);
+            return moved;
+        }
+    }
+
+    private int archive(List<Order> batch) throws IOException {
+        journal.syncVisible();
+        archive.append(batch);
+        for (Order o : batch) {
+            if (ordersById.remove(o.getId(), o)) orderIndex.archived(o);
+        }
+        return batch.size();
+    }
+
+    public long archivedOrderCount() {
+        return archive == null ? 0 : archive.size();
+    }
+
+    // Live orders first, then the archive.
+    private Order lookupOrder(long id) {
+        Order o = ordersById.get(id);
+        if (o != null || archive == null) return o;
+        return archive.find(id);
+    }
+
+    public StoreMetrics metrics() {
+        return metrics;
+    }
+
+    public SalesAggregates sales() {
+        return sales;
+    }
+
+    // Product, stock and order changes from here on, on a bus of StoreEventBus.DEFAULT_CAPACITY events that the first
+    // call creates; nothing is published before that. Removals and edits of existing products are not published.
+    public StoreEventBus events() {
+        StoreEventBus bus = events;
+        return bus.isEnabled() ? bus : events(StoreEventBus.DEFAULT_CAPACITY);
+    }
+
+    public synchronized StoreEventBus events(int capacity) {
+        if (!events.isEnabled()) events = new StoreEventBus(capacity);
+        else if (events.getCapacity() != capacity) throw new IllegalStateException("Events already use a capacity of " + events.getCapacity());
+        return events;
+    }
+
     public Optional<User> authenticate(String username, String password) {
-        if (username == null || password == null) return Optional.empty();
-        User u = usersByName.get(username.trim());
-        if (u == null) return Optional.empty();
-        return u.checkPassword(password) ? Optional.of(u) : Optional.empty();
+        long start = System.nanoTime();
+        User u = username == null || password == null ? null : usersByName.get(username.trim());
+        if (u == null || !u.checkPassword(password)) {
+            metrics.authenticate.rejected(Rejection.BAD_CREDENTIALS);
+            return Optional.empty();
+        }
+        metrics.authenticate.succeeded(start);
+        return Optional.of(u);
     }
 
     public Collection<Product> listProducts() {
         return new ArrayList<>(productsBySku.values());
     }
 
+    // One page of the catalog in SKU order, starting just after afterSku (null for the first page). Only the page is
+    // copied; pass the last SKU returned to get the next one.
+    public List<Product> listProducts(String afterSku, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be > 0");
+        return page(streamProducts(afterSku), limit);
+    }
+
+    // Lazy walk over the live catalog in SKU order; sees concurrent changes but never fails because of them.
+    public Stream<Product> streamProducts(String afterSku) {
+        return (afterSku == null ? productsBySku : productsBySku.tailMap(afterSku.trim(), false)).values().stream();
+    }
+
     public Optional<Product> findProduct(String sku) {
         if (sku == null) return Optional.empty();
-        return Optional.ofNullable(productsBySku.get(sku.trim()));
+        return Optional.ofNullable(skuTable.find(sku.trim()));
     }
 
+    // Best matches first for words typed as prefixes of a product's name or SKU words ("blu mug", "ab-12"); a product
+    // whose SKU is exactly the text comes first. Answered from the search index, without walking the catalog.
+    public List<Product> searchProducts(String text, int limit, boolean inStockOnly) {
+        return search.search(text, limit, inStockOnly);
+    }
+
+    // Product setters called directly bypass the journal; go through addProduct/updateProduct/restock to keep it durable.
     public void addProduct(Product p) {
         if (p == null) throw new IllegalArgumentException("Product required");
-        if (productsBySku.containsKey(p.getSku())) throw new IllegalArgumentException("SKU already exists");
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            synchronized (catalogLock) {
+                insertProduct(p, versions.next());
+                events.productAdded(p);
+                pos = journal.productPut(p);
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+    }
+
+    // Adds a batch of products under one journal sync. With upsert, a SKU that already exists keeps its stock and
+    // takes the row's name, price and threshold instead of being rejected. Returns one entry per row: null when the
+    // row was applied, otherwise why it was rejected; updated[i] is set for rows that changed an existing product.
+    String[] putProducts(List<Product> rows, boolean upsert, boolean[] updated) {
+        String[] errors = new String[rows.size()];
+        long pos = 0;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            synchronized (catalogLock) {
+                long version = versions.next();
+                for (int i = 0; i < rows.size(); i++) {
+                    Product row = rows.get(i);
+                    Product existing = skuTable.find(row.getSku());
+                    try {
+                        if (existing == null) {
+                            insertProduct(row, version);
+                            events.productAdded(row);
+                            pos = journal.productPut(row);
+                        } else if (upsert) {
+                            existing.update(row.getName(), row.getPrice(), row.getLowStockThreshold());
+                            pos = journal.productPut(existing);
+                            updated[i] = true;
+                        } else {
+                            errors[i] = "SKU already exists";
+                        }
+                    } catch (IllegalArgumentException ex) {
+                        errors[i] = ex.getMessage();
+                    }
+                }
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+        return errors;
+    }
+
+    // The product is stamped with its version before any reader can find it.
+    private void insertProduct(Product p, long version) {
+        if (skuTable.find(p.getSku()) != null) throw new IllegalArgumentException("SKU already exists");
+        if (p.observer() != null) throw new IllegalArgumentException("Product already belongs to a store");
+        p.added(versions, version);
+        if (!skuTable.bind(p)) throw new IllegalArgumentException("SKU already exists");
         productsBySku.put(p.getSku(), p);
+        try {
+            observer.track(p);
+        } catch (RuntimeException ex) {
+            productsBySku.remove(p.getSku(), p);
+            skuTable.unbind(p);
+            throw ex;
+        }
+    }
+
+    public void updateProduct(String sku, String name, BigDecimal price, Integer lowStockThreshold) {
+        if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU required");
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            synchronized (catalogLock) {
+                Product p = skuTable.find(sku.trim());
+                if (p == null) throw new IllegalArgumentException("SKU not found");
+                Money newPrice = price == null ? null : Money.of(price);
+                if (newPrice != null && newPrice.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
+                if (lowStockThreshold != null && lowStockThreshold < 0) throw new IllegalArgumentException("Threshold must be >= 0");
+
+                p.update(name, newPrice, lowStockThreshold == null ? -1 : lowStockThreshold);
+                pos = journal.productPut(p);
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
     }
 
     public void removeProduct(String sku) {
         if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU required");
-        Product removed = productsBySku.remove(sku.trim());
-        if (removed == null) throw new IllegalArgumentException("SKU not found");
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            synchronized (catalogLock) {
+                Product removed = skuTable.find(sku.trim());
+                if (removed == null) throw new IllegalArgumentException("SKU not found");
+                removed.removed(versions.next());
+                if (versions.floor() != Long.MAX_VALUE) removedProducts.add(removed);
+                productsBySku.remove(removed.getSku(), removed);
+                skuTable.unbind(removed);
+                observer.untrack(removed);
+                pos = journal.productRemoved(removed.getSku());
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
     }
 
-    public List<Product> lowStockProducts() {
-        List<Product> out = new ArrayList<>();
-        for (Product p : productsBySku.values()) {
-            if (p.isLowStock()) out.add(p);
+    public int restock(String sku, int qty) {
+        if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU required");
+        Product p = skuTable.find(sku.trim());
+        if (p == null) throw new IllegalArgumentException("SKU not found");
+        long word;
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            word = p.putStock(qty, versions.next());
+            List<Product> products = List.of(p);
+            long[] words = { word };
+            events.stockChanged(products, words, 1);
+            pos = journal.stock(products, words, 1);
+        } finally {
+            versions.exit(view);
+            journal.end(op);
         }
-        return out;
+        journal.sync(pos, this);
+        return Product.stockOf(word);
+    }
+
+    // Applies a batch of price, threshold and restock changes, spread over a fork-join pool, as one change: a
+    // snapshot view sees all of it or none, and an order is priced wholly before or wholly after it (see prices).
+    // Each update is checked on its own, before anything changes; the result counts the rejected ones and reports
+    // them with their position in the list, from 1, as the line.
+    public ImportResult updateProducts(List<ProductUpdate> updates) {
+        long start = System.nanoTime();
+        try {
+            ImportResult r = doUpdateProducts(updates);
+            metrics.updateProducts.succeeded(start);
+            return r;
+        } catch (RuntimeException ex) {
+            metrics.updateProducts.rejected(ex);
+            throw ex;
+        }
+    }
+
+    private ImportResult doUpdateProducts(List<ProductUpdate> updates) {
+        if (updates == null) throw new IllegalArgumentException("Updates required");
+        int n = updates.size();
+        Product[] products = new Product[n];
+        Money[] prices = new Money[n];
+        String[] errors = new String[n];
+        long[] positions = new long[n];
+        // Each worker writes only its own indexes; the restocks are published together once the pass is done.
+        long[] stockWords = new long[n];
+        synchronized (catalogLock) {
+            ForkJoinRange.run(n, BULK_GRAIN, i -> {
+                try {
+                    ProductUpdate u = updates.get(i);
+                    if (u == null) throw new IllegalArgumentException("Update required");
+                    if (u.getSku() == null || u.getSku().isBlank()) throw new IllegalArgumentException("SKU required");
+                    Product p = skuTable.find(u.getSku().trim());
+                    if (p == null) throw new IllegalArgumentException("SKU not found: " + u.getSku().trim());
+                    Money price = u.getPrice() == null ? null : Money.of(u.getPrice());
+                    if (price != null && price.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
+                    Integer threshold = u.getLowStockThreshold();
+                    if (threshold != null && threshold < 0) throw new IllegalArgumentException("Threshold must be >= 0");
+                    if (u.getRestock() < 0) throw new IllegalArgumentException("Restock must be >= 0");
+                    if (u.getRestock() > Integer.MAX_VALUE - p.getStock()) throw new IllegalArgumentException("Stock would overflow");
+                    if (price == null && threshold == null && u.getRestock() == 0) throw new IllegalArgumentException("Nothing to update");
+                    products[i] = p;
+                    prices[i] = price;
+                } catch (IllegalArgumentException | ArithmeticException ex) {
+                    errors[i] = ex.getMessage();
+                }
+            });
+            boolean repricing = false;
+            // Marks each SKU id taken by its first update; ids are dense, so this is one small array.
+            BitSet taken = new BitSet();
+            for (int i = 0; i < n; i++) {
+                if (products[i] == null) continue;
+                int id = products[i].skuId();
+                if (taken.get(id)) {
+                    errors[i] = "SKU appears earlier in the batch";
+                    products[i] = null;
+                } else {
+                    taken.set(id);
+                    repricing |= prices[i] != null;
+                }
+            }
+
+            long op = journal.begin();
+            long view = versions.enter();
+            try {
+                long version = versions.next();
+                // Orders waiting on the lock are held for the parallel pass only; the journal is written after.
+                long stamp = repricing ? priceLock.writeLock() : 0;
+                try {
+                    ForkJoinRange.run(n, BULK_GRAIN, i -> {
+                        Product p = products[i];
+                        if (p == null) return;
+                        ProductUpdate u = updates.get(i);
+                        if (u.getRestock() > 0) {
+                            try {
+                                stockWords[i] = p.putStock(u.getRestock(), version);
+                            } catch (IllegalArgumentException ex) {
+                                errors[i] = ex.getMessage();
+                                products[i] = null;
+                                return;
+                            }
+                        }
+                        Integer threshold = u.getLowStockThreshold();
+                        if (prices[i] != null || threshold != null) p.update(null, prices[i], threshold == null ? -1 : threshold, version);
+                    });
+                } finally {
+                    if (repricing) priceLock.unlockWrite(stamp);
+                }
+                List<Product> restocked = new ArrayList<>();
+                int count = 0;
+                for (int i = 0; i < n; i++) {
+                    if (products[i] == null || updates.get(i).getRestock() == 0) continue;
+                    restocked.add(products[i]);
+                    stockWords[count++] = stockWords[i];
+                }
+                if (count > 0) events.stockChanged(restocked, stockWords, count);
+                ForkJoinRange.run(n, BULK_GRAIN, i -> {
+                    if (products[i] != null) positions[i] = journal.productPut(products[i]);
+                });
+            } finally {
+                versions.exit(view);
+                journal.end(op);
+            }
+        }
+
+        long pos = 0;
+        long rejected = 0;
+        List<ImportResult.RowError> rowErrors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            pos = Math.max(pos, positions[i]);
+            if (errors[i] == null) continue;
+            rejected++;
+            metrics.updateProducts.rejected(Rejection.ofItem(errors[i]));
+            if (rowErrors.size() < ImportResult.MAX_REPORTED_ERRORS) rowErrors.add(new ImportResult.RowError(i + 1, errors[i]));
+        }
+        journal.sync(pos, this);
+        return new ImportResult(0, n - rejected, rejected, rowErrors);
+    }
+
+    // A consistent, read-only view of the store as of now, for reports; see StoreView. Opening one only waits for
+    // mutations already running, and writers never wait for it.
+    public StoreView snapshot() {
+        return new StoreView(this, versions.open());
+    }
+
+    void closeView(long version) {
+        versions.close(version);
+        long floor = versions.floor();
+        if (!removedProducts.isEmpty()) removedProducts.removeIf(p -> p.removedVersion() <= floor);
+    }
+
+    // The catalog as a view at this version sees it, as detached copies in SKU order. Lazy unless products were
+    // removed since the view opened.
+    Stream<Product> productsAsOf(long version) {
+        Stream<Product> live = productsBySku.values().stream().filter(p -> p.inCatalogAt(version));
+        if (!removedProducts.isEmpty()) {
+            List<Product> gone = new ArrayList<>();
+            for (Product p : removedProducts) {
+                if (p.inCatalogAt(version) && skuTable.find(p.getSku()) != p) gone.add(p);
+            }
+            if (!gone.isEmpty()) live = Stream.concat(live, gone.stream()).sorted(Comparator.comparing(Product::getSku));
+        }
+        return live.map(p -> p.asOf(version));
+    }
+
+    Product productAsOf(String sku, long version) {
+        Product p = skuTable.find(sku);
+        if (p != null && p.inCatalogAt(version)) return p.asOf(version);
+        for (Product r : removedProducts) {
+            if (r.getSku().equals(sku) && r.inCatalogAt(version)) return r.asOf(version);
+        }
+        return null;
+    }
+
+    public List<Product> lowStockProducts() {
+        return lowStock.snapshot();
+    }
+
+    public void addLowStockListener(LowStockListener listener) {
+        lowStock.addListener(listener);
+    }
+
+    public void removeLowStockListener(LowStockListener listener) {
+        lowStock.removeListener(listener);
     }
 
     public Order placeOrder(String username, Map<String, Integer> skuToQty) {
-        if (username == null || username.isBlank()) throw new IllegalArgumentException("User required");
-        if (skuToQty == null || skuToQty.isEmpty()) throw new IllegalArgumentException("Order items required");
+        long start = System.nanoTime();
+        try {
+            Order o = doPlaceOrder(username, skuToQty);
+            metrics.placeOrder.succeeded(start);
+            return o;
+        } catch (RuntimeException ex) {
+            metrics.placeOrder.rejected(ex);
+            throw ex;
+        }
+    }
 
-        List<OrderItem> items = new ArrayList<>();
+    // A client retrying a checkout sends the same key each time: the first call places the order and the others
+    // return that same order, without taking stock again; retries racing the first one wait for it. Reusing a key
+    // for a different cart is an IllegalStateException. A null key is a plain placeOrder.
+    public Order placeOrder(String username, Map<String, Integer> skuToQty, String idempotencyKey) {
+        if (idempotencyKey == null) return placeOrder(username, skuToQty);
+        if (idempotencyKey.isBlank()) throw new IllegalArgumentException("Idempotency key must not be blank");
+        Map<String, Integer> cart = normalizeCart(username, skuToQty);
+        return idempotency.place(username, idempotencyKey, cart, () -> placeOrder(username, cart));
+    }
 
-        for (Map.Entry<String, Integer> e : skuToQty.entrySet()) {
-            String sku = e.getKey();
-            Integer qty = e.getValue();
-            if (sku == null || sku.isBlank()) throw new IllegalArgumentException("Bad SKU in cart");
-            if (qty == null || qty <= 0) throw new IllegalArgumentException("Quantity must be > 0");
+    private Order doPlaceOrder(String username, Map<String, Integer> skuToQty) {
+        Map<String, Integer> cart = normalizeCart(username, skuToQty);
+        List<Product> products = productsFor(cart);
+        long[] prices = prices(products);
+
+        int[] lines = Order.newLines(cart.size());
+        long[] words = new long[cart.size()];
+        Order o;
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            long version = versions.next();
+            int i = 0;
+            for (Map.Entry<String, Integer> e : cart.entrySet()) {
+                Product p = products.get(i);
+                int qty = e.getValue();
+                long word = p.takeStock(qty, version);
+                if (word == Product.NO_STOCK) {
+                    rollback(products, lines, i, words, version);
+                    throw new IllegalArgumentException("Not enough stock for " + e.getKey() + " (have " + p.getStock() + ")");
+                }
+                words[i] = word;
+                setLine(lines, i, p, qty, prices[i]);
+                i++;
+            }
+
+            long id = nextOrderId.getAndIncrement();
+            o = new Order(id, username, Instant.now(), skuTable, lines, version);
+            events.orderPlaced(o, words);
+            ordersById.put(id, o);
+            orderIndex.add(o);
+            sales.placed(o);
+            pos = journal.orderPlaced(o, words);
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        schedulePaymentTimeout(o);
+        journal.sync(pos, this);
+        return o;
+    }
 
-            Product p = productsBySku.get(sku.trim());
+    private List<Product> productsFor(Map<String, Integer> cart) {
+        List<Product> products = new ArrayList<>(cart.size());
+        for (String sku : cart.keySet()) {
+            Product p = skuTable.find(sku);
             if (p == null) throw new IllegalArgumentException("SKU not found: " + sku);
-            if (qty > p.getStock()) throw new IllegalArgumentException("Not enough stock for " + sku + " (have " + p.getStock() + ")");
+            products.add(p);
+        }
+        return products;
+    }
 
-            items.add(new OrderItem(p.getSku(), p.getName(), p.getPrice(), qty));
+    // Places several carts in one pass. Each cart still succeeds or fails on its own, and results come back in the
+    // same order as the carts. A SKU's demand across the whole batch is reserved with one CAS when there is enough
+    // stock; only SKUs that cannot cover every cart fall back to per-cart reservation, first cart first. The batch is
+    // journalled as one record, so it can have at most BATCH_RECORD_LINES order lines.
+    public List<OrderResult> placeOrders(List<CartRequest> carts) {
+        long start = System.nanoTime();
+        try {
+            List<OrderResult> results = doPlaceOrders(carts);
+            metrics.placeOrders.succeeded(start);
+            for (OrderResult r : results) if (!r.isSuccess()) metrics.placeOrders.rejected(Rejection.ofItem(r.getError()));
+            return results;
+        } catch (RuntimeException ex) {
+            metrics.placeOrders.rejected(ex);
+            throw ex;
         }
+    }
+
+    private List<OrderResult> doPlaceOrders(List<CartRequest> carts) {
+        if (carts == null) throw new IllegalArgumentException("Carts required");
+        long lineCount = 0;
+        for (CartRequest req : carts) if (req != null && req.getItems() != null) lineCount += req.getItems().size();
+        if (lineCount > BATCH_RECORD_LINES) throw new IllegalArgumentException("Batch has more than " + BATCH_RECORD_LINES + " order lines");
+        int n = carts.size();
+        OrderResult[] results = new OrderResult[n];
+        List<Map<String, Integer>> normalized = new ArrayList<>(n);
+        Map<String, Product> products = new HashMap<>();
+        Map<Product, Integer> demand = new LinkedHashMap<>();
 
-        for (OrderItem it : items) {
-            Product p = productsBySku.get(it.getSku());
-            p.removeStock(it.getQuantity());
+        for (int c = 0; c < n; c++) {
+            CartRequest req = carts.get(c);
+            Map<String, Integer> cart = null;
+            try {
+                if (req == null) throw new IllegalArgumentException("Cart required");
+                cart = normalizeCart(req.getUsername(), req.getItems());
+                for (String sku : cart.keySet()) {
+                    Product p = products.computeIfAbsent(sku, skuTable::find);
+                    if (p == null) throw new IllegalArgumentException("SKU not found: " + sku);
+                }
+            } catch (IllegalArgumentException | ArithmeticException ex) {
+                results[c] = OrderResult.rejected(ex.getMessage());
+                cart = null;
+            }
+            normalized.add(cart);
+            if (cart == null) continue;
+            for (Map.Entry<String, Integer> e : cart.entrySet()) {
+                demand.merge(products.get(e.getKey()), e.getValue(), (a, b) -> (int) Math.min((long) a + b, Integer.MAX_VALUE));
+            }
         }
 
-        long id = nextOrderId++;
-        Order o = new Order(id, username, items);
-        ordersById.put(id, o);
-        return o;
+        List<Product> distinct = new ArrayList<>(demand.keySet());
+        long[] distinctPrices = prices(distinct);
+        Map<Product, Long> prices = new HashMap<>();
+        for (int i = 0; i < distinct.size(); i++) prices.put(distinct.get(i), distinctPrices[i]);
+
+        long pos = 0;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            // One version for the whole batch: a snapshot view sees all of its orders or none.
+            long version = versions.next();
+            // The word each SKU was left at by this batch's own last change to it, for the journal record. Not the
+            // product's current word: that may carry another mutation's change, whose record a crash could lose.
+            Map<Product, Long> lastWords = new LinkedHashMap<>();
+            Map<Product, Long> bulk = new HashMap<>();
+            for (Map.Entry<Product, Integer> e : demand.entrySet()) {
+                if (e.getValue() == Integer.MAX_VALUE) continue;
+                long word = e.getKey().takeStock(e.getValue(), version);
+                if (word == Product.NO_STOCK) continue;
+                bulk.put(e.getKey(), word);
+                lastWords.put(e.getKey(), word);
+            }
+
+            Map<Product, Integer> refunds = new LinkedHashMap<>();
+            List<Product> released = new ArrayList<>();
+            List<Long> releasedWords = new ArrayList<>();
+            List<int[]> linesPerCart = new ArrayList<>(n);
+            List<long[]> wordsPerCart = new ArrayList<>(n);
+            int accepted = 0;
+
+            for (int c = 0; c < n; c++) {
+                Map<String, Integer> cart = normalized.get(c);
+                linesPerCart.add(null);
+                wordsPerCart.add(null);
+                if (cart == null) continue;
+
+                int[] lines = Order.newLines(cart.size());
+                long[] words = new long[cart.size()];
+                String shortSku = null;
+                int i = 0;
+                for (Map.Entry<String, Integer> e : cart.entrySet()) {
+                    Product p = products.get(e.getKey());
+                    int qty = e.getValue();
+                    Long bulkWord = bulk.get(p);
+                    long word = bulkWord != null ? bulkWord : p.takeStock(qty, version);
+                    if (word == Product.NO_STOCK) {
+                        shortSku = e.getKey();
+                        break;
+                    }
+                    if (bulkWord == null) lastWords.put(p, word);
+                    words[i] = word;
+                    setLine(lines, i++, p, qty, prices.get(p));
+                }
+
+                if (shortSku != null) {
+                    // Lines reserved for this cart alone go straight back; its share of a bulk take is returned once
+                    // per SKU after the pass.
+                    int j = 0;
+                    for (Map.Entry<String, Integer> e : cart.entrySet()) {
+                        Product p = products.get(e.getKey());
+                        if (bulk.containsKey(p)) {
+                            refunds.merge(p, e.getValue(), Integer::sum);
+                        } else if (j < i) {
+                            long word = p.putStock(e.getValue(), version);
+                            released.add(p);
+                            releasedWords.add(word);
+                            lastWords.put(p, word);
+                        }
+                        j++;
+                    }
+                    results[c] = OrderResult.rejected("Not enough stock for " + shortSku
+                            + " (have " + products.get(shortSku).getStock() + ")");
+                    continue;
+                }
+                linesPerCart.set(c, lines);
+                wordsPerCart.set(c, words);
+                accepted++;
+            }
+
+            for (Map.Entry<Product, Integer> e : refunds.entrySet()) {
+                long word = e.getKey().putStock(e.getValue(), version);
+                released.add(e.getKey());
+                releasedWords.add(word);
+                lastWords.put(e.getKey(), word);
+            }
+            long[] words = new long[released.size()];
+            for (int i = 0; i < words.length; i++) words[i] = releasedWords.get(i);
+            events.stockChanged(released, words, words.length);
+
+            List<Order> placed = new ArrayList<>(accepted);
+            long id = nextOrderId.getAndAdd(accepted);
+            for (int c = 0; c < n; c++) {
+                int[] lines = linesPerCart.get(c);
+                if (lines == null) continue;
+                Order o = new Order(id++, carts.get(c).getUsername(), Instant.now(), skuTable, lines, version);
+                events.orderPlaced(o, wordsPerCart.get(c));
+                ordersById.put(o.getId(), o);
+                orderIndex.add(o);
+                sales.placed(o);
+                results[c] = OrderResult.placed(o);
+                placed.add(o);
+            }
+            List<Product> touched = new ArrayList<>(lastWords.keySet());
+            long[] lastWordArray = new long[touched.size()];
+            for (int i = 0; i < lastWordArray.length; i++) lastWordArray[i] = lastWords.get(touched.get(i));
+            pos = journal.ordersPlaced(placed, touched, lastWordArray);
+            // After the record, so an expiry is never journalled ahead of its order.
+            for (Order o : placed) schedulePaymentTimeout(o);
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+        return Arrays.asList(results);
     }
 
     public Optional<Order> findOrder(long id) {
-        return Optional.ofNullable(ordersById.get(id));
+        return Optional.ofNullable(lookupOrder(id));
     }
 
     public List<Order> listOrdersForUser(String username) {
-        List<Order> out = new ArrayList<>();
-        for (Order o : ordersById.values()) {
-            if (o.getCustomerUsername().equals(username)) out.add(o);
-        }
-        return out;
+        if (username == null) return Collections.emptyList();
+        return orderIndex.forCustomer(username, this::lookupOrder);
+    }
+
+    public List<Order> listOrdersForUser(String username, Instant from, Instant to, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be > 0");
+        if (username == null) return Collections.emptyList();
+        return orderIndex.forCustomerNewestFirst(username, from, to, limit, this::lookupOrder);
+    }
+
+    public List<Order> listOrdersCreatedBetween(Instant from, Instant to, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be > 0");
+        return orderIndex.createdNewestFirst(from, to, limit, this::lookupOrder);
+    }
+
+    // Orders now at status, oldest first, created in [from, to); a null bound is open. Archived orders are not included.
+    public List<Order> listOrdersByStatus(OrderStatus status, Instant from, Instant to, int limit) {
+        if (status == null) throw new IllegalArgumentException("Status required");
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be > 0");
+        return orderIndex.withStatus(status, from, to, limit, ordersById::get);
+    }
+
+    // Cursor paging over orders in id order; afterOrderId 0 starts at the beginning.
+    public List<Order> listOrders(long afterOrderId, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be > 0");
+        return page(streamOrders(afterOrderId), limit);
+    }
+
+    public Stream<Order> streamOrders(long afterOrderId) {
+        Collection<Order> hot = ordersById.tailMap(afterOrderId, false).values();
+        if (archive == null || archive.size() == 0) return hot.stream();
+        Iterator<Order> merged = archive.mergeWith(hot.iterator(), afterOrderId);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // A customer's orders oldest first, continuing after afterOrderId (0 for the first page).
+    public List<Order> listOrdersForUser(String username, long afterOrderId, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be > 0");
+        if (username == null) return Collections.emptyList();
+        if (afterOrderId == 0) return orderIndex.forCustomerAfter(username, Instant.MIN, Long.MIN_VALUE, limit, this::lookupOrder);
+
+        Order cursor = lookupOrder(afterOrderId);
+        if (cursor == null) throw new IllegalArgumentException("Order not found: " + afterOrderId);
+        return orderIndex.forCustomerAfter(username, cursor.getCreatedAt(), cursor.getId(), limit, this::lookupOrder);
     }
 
+    // Reads every archived order back in as well; page with listOrders when the history is large.
     public List<Order> listAllOrders() {
-        return new ArrayList<>(ordersById.values());
+        if (archive == null || archive.size() == 0) return new ArrayList<>(ordersById.values());
+        return streamOrders(0).collect(Collectors.toList());
     }
 
     public void cancelOrderAsCustomer(String username, long orderId) {
-        Order o = ordersById.get(orderId);
+        long start = System.nanoTime();
+        try {
+            doCancelOrder(username, orderId);
+            metrics.cancelOrder.succeeded(start);
+        } catch (RuntimeException ex) {
+            metrics.cancelOrder.rejected(ex);
+            throw ex;
+        }
+    }
+
+    private void doCancelOrder(String username, long orderId) {
+        Order o = lookupOrder(orderId);
         if (o == null) throw new IllegalArgumentException("Order not found");
         if (!o.getCustomerUsername().equals(username)) throw new IllegalArgumentException("Not your order");
-        if (!o.canCustomerCancel()) throw new IllegalArgumentException("Cannot cancel at status: " + o.getStatus());
 
-        restockFromOrder(o);
-        o.setStatus(OrderStatus.CANCELLED);
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            synchronized (o) {
+                if (!o.canCustomerCancel()) throw new IllegalArgumentException("Cannot cancel at status: " + o.getStatus());
+                pos = transition(o, OrderStatus.CANCELLED);
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
     }
 
     public void updateOrderStatusAsAdmin(long orderId, OrderStatus newStatus) {
-        Order o = ordersById.get(orderId);
+        long start = System.nanoTime();
+        try {
+            doUpdateOrderStatus(orderId, newStatus);
+            metrics.updateOrderStatus.succeeded(start);
+        } catch (RuntimeException ex) {
+            metrics.updateOrderStatus.rejected(ex);
+            throw ex;
+        }
+    }
+
+    // Moves every order now at status, created in [from, to) (null bounds are open) and accepted by filter (null for
+    // all), on to next in one pass, oldest first. The filter runs before anything moves, so one that throws leaves
+    // every order as it was. Each order is re-checked under its own monitor and follows the same rules as
+    // updateOrderStatusAsAdmin; one that fails stays where it is and gets the reason in the result. The stock cancelled
+    // orders held goes back with one change per SKU, journalled in the same record as the moves (one record per
+    // BATCH_RECORD_LINES order lines), and the batch is synced once.
+    public BulkTransitionResult transitionOrders(OrderStatus status, Instant from, Instant to, Predicate<Order> filter,
+                                                 OrderStatus next) {
+        long start = System.nanoTime();
+        try {
+            BulkTransitionResult r = doTransitionOrders(status, from, to, filter, next);
+            metrics.transitionOrders.succeeded(start);
+            for (BulkTransitionResult.Outcome o : r.getOutcomes()) {
+                if (!o.isMoved()) metrics.transitionOrders.rejected(Rejection.ofItem(o.getError()));
+            }
+            return r;
+        } catch (RuntimeException ex) {
+            metrics.transitionOrders.rejected(ex);
+            throw ex;
+        }
+    }
+
+    private BulkTransitionResult doTransitionOrders(OrderStatus status, Instant from, Instant to,
+                                                   Predicate<Order> filter, OrderStatus next) {
+        if (status == null || next == null) throw new IllegalArgumentException("Status required");
+        List<Order> selected = orderIndex.withStatus(status, from, to, Integer.MAX_VALUE, ordersById::get);
+        // Outside the bracket: a filter that opens a snapshot would wait for this very mutation to finish.
+        if (filter != null) selected = selected.stream().filter(filter).collect(Collectors.toList());
+        List<BulkTransitionResult.Outcome> outcomes = new ArrayList<>(selected.size());
+        long restocked = 0;
+        long pos = 0;
+        int start = 0;
+        while (start < selected.size()) {
+            int end = start + 1;
+            for (int lines = selected.get(start).lineCount(); end < selected.size(); end++) {
+                lines += selected.get(end).lineCount();
+                if (lines > BATCH_RECORD_LINES) break;
+            }
+            long[] result = transitionWave(selected.subList(start, end), status, next, outcomes);
+            pos = Math.max(pos, result[0]);
+            restocked += result[1];
+            start = end;
+        }
+        journal.sync(pos, this);
+        return new BulkTransitionResult(status, next, outcomes, restocked);
+    }
+
+    // One journal record's worth of transitionOrders: returns the record's position and the units put back.
+    private long[] transitionWave(List<Order> wave, OrderStatus status, OrderStatus next,
+                                  List<BulkTransitionResult.Outcome> outcomes) {
+        long[] movedIds = new long[wave.size()];
+        int moved = 0;
+        Map<Product, Integer> restock = new LinkedHashMap<>();
+        long restocked = 0;
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            try {
+                for (Order o : wave) {
+                    synchronized (o) {
+                        if (o.getStatus() != status) {
+                            outcomes.add(BulkTransitionResult.rejected(o.getId(), "Now at status " + o.getStatus()));
+                            continue;
+                        }
+                        try {
+                            transition(o, next, true);
+                        } catch (RuntimeException ex) {
+                            outcomes.add(BulkTransitionResult.rejected(o.getId(), ex.getMessage()));
+                            continue;
+                        }
+                        movedIds[moved++] = o.getId();
+                        outcomes.add(BulkTransitionResult.moved(o.getId()));
+                    }
+                    if (next != OrderStatus.CANCELLED) continue;
+                    for (int i = 0; i < o.lineCount(); i++) {
+                        Product p = skuTable.product(o.skuId(i));
+                        if (p != null) restock.merge(p, o.quantity(i), Math::addExact);
+                    }
+                }
+            } finally {
+                // Whatever stopped the loop, the orders that did move give their stock back and are journalled with it.
+                List<Product> products = new ArrayList<>(restock.size());
+                long[] words = new long[restock.size()];
+                if (!restock.isEmpty()) {
+                    long version = versions.next();
+                    for (Map.Entry<Product, Integer> e : restock.entrySet()) {
+                        try {
+                            words[products.size()] = e.getKey().putStock(e.getValue(), version);
+                        } catch (IllegalArgumentException ex) {
+                            // Stock would overflow; the other SKUs still go back.
+                            continue;
+                        }
+                        products.add(e.getKey());
+                        restocked += e.getValue();
+                    }
+                    events.stockChanged(products, words, products.size());
+                }
+                pos = journal.ordersStatus(movedIds, moved, next, products, words);
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        return new long[] { pos, restocked };
+    }
+
+    private void doUpdateOrderStatus(long orderId, OrderStatus newStatus) {
+        Order o = lookupOrder(orderId);
         if (o == null) throw new IllegalArgumentException("Order not found");
 
-        if (newStatus == OrderStatus.CANCELLED) {
-            if (o.getStatus() == OrderStatus.SHIPPED || o.getStatus() == OrderStatus.DELIVERED)
-                throw new IllegalArgumentException("Cannot cancel shipped/delivered order");
-            restockFromOrder(o);
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            synchronized (o) {
+                if (newStatus == OrderStatus.CANCELLED) {
+                    if (o.getStatus() == OrderStatus.SHIPPED || o.getStatus() == OrderStatus.DELIVERED)
+                        throw new IllegalArgumentException("Cannot cancel shipped/delivered order");
+                }
+                pos = transition(o, newStatus);
+            }
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+    }
+
+    // Caller holds the order's monitor, inside a versions bracket. The transition is validated before any stock moves,
+    // and its version is taken under the monitor so an order's status history stays in version order.
+    private long transition(Order o, OrderStatus next) {
+        return transition(o, next, false);
+    }
+
+    // In a wave, a cancellation leaves its stock for the caller to put back and the caller journals the move, in one
+    // record with that stock; 0 is returned.
+    private long transition(Order o, OrderStatus next, boolean wave) {
+        o.checkTransition(next);
+        long version = versions.next();
+        List<String> skus = Collections.emptyList();
+        long[] words = NO_WORDS;
+        if (next == OrderStatus.CANCELLED && !wave) {
+            skus = new ArrayList<>(o.lineCount());
+            words = new long[o.lineCount()];
+            restockFromOrder(o, skus, words, version);
+        }
+        OrderStatus before = o.getStatus();
+        o.setStatus(next, version, versions.floor());
+        statusChanged(o, before);
+        events.orderStatusChanged(o, before, skus, words);
+        return wave ? 0 : journal.orderStatus(o.getId(), next, skus, words);
+    }
+
+    private void restockFromOrder(Order o, List<String> restocked, long[] words, long version) {
+        for (int i = 0; i < o.lineCount(); i++) {
+            Product p = skuTable.product(o.skuId(i));
+            if (p == null) continue;
+            words[restocked.size()] = p.putStock(o.quantity(i), version);
+            restocked.add(p.getSku());
+        }
+    }
+
+    // The line keeps the product's SKU and current name as table ids, and its current price.
+    private void setLine(int[] lines, int i, Product p, int qty, long priceMinor) {
+        Order.setLine(lines, i, skuTable.skuId(p), skuTable.nameId(p), qty, priceMinor);
+    }
+
+    // The products' unit prices as of one moment, so that an order never has some lines priced before a bulk
+    // update and some after. Costs two volatile reads more than reading them unguarded, unless an update is being
+    // published, in which case it waits for the update to finish.
+    private long[] prices(List<Product> products) {
+        long stamp = priceLock.tryOptimisticRead();
+        long[] prices = readPrices(products);
+        if (priceLock.validate(stamp)) return prices;
+        stamp = priceLock.readLock();
+        try {
+            return readPrices(products);
+        } finally {
+            priceLock.unlockRead(stamp);
         }
+    }
+
+    private static long[] readPrices(List<Product> products) {
+        long[] prices = new long[products.size()];
+        for (int i = 0; i < prices.length; i++) prices[i] = products.get(i).getPrice().minorUnits();
+        return prices;
+    }
+
+    private static <T> List<T> page(Stream<T> items, int limit) {
+        List<T> out = new ArrayList<>(Math.min(limit, 64));
+        Iterator<T> it = items.iterator();
+        while (out.size() < limit && it.hasNext()) out.add(it.next());
+        return out;
+    }
+
+    static Map<String, Integer> normalizeCart(String username, Map<String, Integer> skuToQty) {
+        if (username == null || username.isBlank()) throw new IllegalArgumentException("User required");
+        if (skuToQty == null || skuToQty.isEmpty()) throw new IllegalArgumentException("Order items required");
+
+        Map<String, Integer> cart = new TreeMap<>();
+        for (Map.Entry<String, Integer> e : skuToQty.entrySet()) {
+            String sku = e.getKey();
+            Integer qty = e.getValue();
+            if (sku == null || sku.isBlank()) throw new IllegalArgumentException("Bad SKU in cart");
+            if (qty == null || qty <= 0) throw new IllegalArgumentException("Quantity must be > 0");
+            cart.merge(sku.trim(), qty, Math::addExact);
+        }
+        return cart;
+    }
+
+    // Compensates the lines already taken when a later line of the same cart cannot be reserved.
+    private void rollback(List<Product> products, int[] lines, int taken, long[] words, long version) {
+        for (int i = 0; i < taken; i++) {
+            words[i] = products.get(i).putStock(Order.quantityOf(lines, i), version);
+        }
+        events.stockChanged(products, words, taken);
+        journal.stock(products, words, taken);
+    }
+
+    // The three calls below are what a ShardedStore coordinator uses for carts spanning shards. reserve takes stock for
+    // every line of an already normalized cart or for none of them, journalled as plain stock changes, and fills in
+    // the stock word each line left behind.
+    List<OrderItem> reserve(Map<String, Integer> cart, long[] words) {
+        long start = System.nanoTime();
+        try {
+            List<OrderItem> items = doReserve(cart, words);
+            metrics.reserve.succeeded(start);
+            return items;
+        } catch (RuntimeException ex) {
+            metrics.reserve.rejected(ex);
+            throw ex;
+        }
+    }
+
+    private List<OrderItem> doReserve(Map<String, Integer> cart, long[] words) {
+        List<Product> products = productsFor(cart);
+        long[] prices = prices(products);
+        int[] lines = Order.newLines(cart.size());
+        List<OrderItem> items = new ArrayList<>(cart.size());
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            long version = versions.next();
+            int i = 0;
+            for (Map.Entry<String, Integer> e : cart.entrySet()) {
+                Product p = products.get(i);
+                int qty = e.getValue();
+                long word = p.takeStock(qty, version);
+                if (word == Product.NO_STOCK) {
+                    rollback(products, lines, i, words, version);
+                    throw new IllegalArgumentException("Not enough stock for " + e.getKey() + " (have " + p.getStock() + ")");
+                }
+                words[i] = word;
+                setLine(lines, i, p, qty, prices[i]);
+                items.add(new OrderItem(p.getSku(), p.getName(), Money.ofMinor(prices[i]), qty));
+                i++;
+            }
+            events.stockChanged(products, words, i);
+            pos = journal.stock(products, words, i);
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+        return items;
+    }
+
+    // Returns stock taken by reserve, or held by a cancelled order recorded on another shard. SKUs no longer in the
+    // catalog are skipped, as when cancelling.
+    void release(Map<String, Integer> cart) {
+        List<Product> products = new ArrayList<>(cart.size());
+        long[] words = new long[cart.size()];
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            long version = versions.next();
+            for (Map.Entry<String, Integer> e : cart.entrySet()) {
+                Product p = skuTable.find(e.getKey());
+                if (p == null) continue;
+                words[products.size()] = p.putStock(e.getValue(), version);
+                products.add(p);
+            }
+            events.stockChanged(products, words, products.size());
+            pos = journal.stock(products, words, products.size());
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+    }
 
-        o.setStatus(newStatus);
+    // Records an order whose stock reserve calls (on this shard or others) already hold; words are what those left
+    // behind, and only the ones for this shard's SKUs matter on replay. No payment timeout is scheduled, since expiry
+    // here could not return the other shards' stock.
+    Order recordOrder(String username, List<OrderItem> items, long[] words) {
+        long start = System.nanoTime();
+        try {
+            Order o = doRecordOrder(username, items, words);
+            metrics.recordOrder.succeeded(start);
+            return o;
+        } catch (RuntimeException ex) {
+            metrics.recordOrder.rejected(ex);
+            throw ex;
+        }
+    }
+
+    private Order doRecordOrder(String username, List<OrderItem> items, long[] words) {
+        Order o;
+        long pos;
+        long op = journal.begin();
+        long view = versions.enter();
+        try {
+            long id = nextOrderId.getAndIncrement();
+            o = new Order(id, username, Instant.now(), skuTable, items, versions.next());
+            events.orderPlaced(o, null);
+            ordersById.put(id, o);
+            orderIndex.add(o);
+            sales.placed(o);
+            pos = journal.orderPlaced(o, words);
+        } finally {
+            versions.exit(view);
+            journal.end(op);
+        }
+        journal.sync(pos, this);
+        return o;
     }
 
-    private void restockFromOrder(Order o) {
-        for (OrderItem it : o.getItems()) {
-            Product p = productsBySku.get(it.getSku());
-            if (p != null) p.addStock(it.getQuantity());
+    void restoreProduct(String sku, String name, Money price, int lowStockThreshold, long stockWord) {
+        Product p = skuTable.find(sku);
+        if (p == null) {
+            p = new Product(sku, name, price, Product.stockOf(stockWord), lowStockThreshold);
+            insertProduct(p, 0);
+        } else {
+            p.update(name, price, lowStockThreshold);
         }
+        p.restoreStock(stockWord);
+    }
+
+    void restoreRemoval(String sku) {
+        Product removed = skuTable.find(sku);
+        if (removed == null) return;
+        productsBySku.remove(sku, removed);
+        skuTable.unbind(removed);
+        observer.untrack(removed);
+    }
+
+    void restoreStock(String sku, long stockWord) {
+        Product p = skuTable.find(sku);
+        if (p != null) p.restoreStock(stockWord);
+    }
+
+    void restoreOrder(long id, String username, Instant createdAt, List<OrderItem> items, OrderStatus status) {
+        if (archive != null && archive.contains(id)) return;
+        Order o = new Order(id, skuTable.internCustomer(username), createdAt, skuTable, items, 0);
+        if (status != OrderStatus.PLACED) o.restoreStatus(status);
+        if (ordersById.putIfAbsent(id, o) != null) return;
+        orderIndex.add(o);
+        sales.restored(o);
+        restoreNextOrderId(id + 1);
+    }
+
+    SkuTable skuTable() {
+        return skuTable;
+    }
+
+    void restoreArchived(Order o) {
+        orderIndex.add(o.getId(), o.getCustomerUsername(), o.getCreatedAt());
+        sales.restored(o);
+        restoreNextOrderId(o.getId() + 1);
+    }
+
+    void restoreNextOrderId(long next) {
+        nextOrderId.accumulateAndGet(next, Math::max);
+    }
+
+    long peekNextOrderId() {
+        return nextOrderId.get();
+    }
+
+    Collection<Product> products() {
+        return productsBySku.values();
+    }
+
+    // Orders still on the heap; archived ones are not included.
+    Collection<Order> orders() {
+        return ordersById.values();
+    }
+
+    void restoreStatus(long id, OrderStatus status) {
+        Order o = ordersById.get(id);
+        if (o == null) return;
+        OrderStatus before = o.getStatus();
+        o.restoreStatus(status);
+        statusChanged(o, before);
+    }
+
+    // Every status change goes through here, so the status index and the sales counters never disagree with the order.
+    private void statusChanged(Order o, OrderStatus before) {
+        orderIndex.statusChanged(o, before);
+        sales.transitioned(o, before, o.getStatus());
+    }
+
+    @Override
+    public void close() throws IOException {
+        setPaymentTimeout(null);
+        if (archive != null) setArchivePolicy(null);
+        metrics.unregisterMBeans();
+        events.close();
+        journal.close();
+        if (archive != null) archive.close();
     }
 }
@@ -0,0 +1,65 @@
+package com.company.ims;
+
+// One change published on a store's StoreEventBus. A subscriber is handed the same instance for every event, with
+// its fields overwritten, so copy out anything it needs to keep past onEvent.
+public final class StoreEvent {
+    public enum Type {
+        // getProduct, getSku and the starting stock.
+        PRODUCT_ADDED,
+        // getSku and the stock level the change left. Concurrent changes to one SKU can be published out of order;
+        // keep the event with the higher getStockChange, as journal replay does.
+        STOCK_CHANGED,
+        // getOrder, with its lines and total; the STOCK_CHANGED events for its lines follow.
+        ORDER_PLACED,
+        // getOrder, getPreviousStatus and getStatus. A cancellation is followed by the STOCK_CHANGED events for the
+        // stock it put back. Events for one order always arrive in the order they happened.
+        ORDER_STATUS_CHANGED
+    }
+
+    Type type;
+    String sku;
+    Product product;
+    long stockWord;
+    Order order;
+    OrderStatus status;
+    OrderStatus previousStatus;
+
+    StoreEvent() { }
+
+    public Type getType() { return type; }
+    // The live product, not a copy; null unless PRODUCT_ADDED.
+    public Product getProduct() { return product; }
+    // null for order events.
+    public String getSku() { return sku; }
+    public int getStock() { return Product.stockOf(stockWord); }
+    // Counts up by one with every change to the SKU's stock.
+    public long getStockChange() { return stockWord >>> 32; }
+    // The live order, not a copy; null for product and stock events.
+    public Order getOrder() { return order; }
+    public long getOrderId() { return order == null ? 0 : order.getId(); }
+    public OrderStatus getStatus() { return status; }
+    public OrderStatus getPreviousStatus() { return previousStatus; }
+
+    void copyFrom(StoreEvent e) {
+        type = e.type;
+        sku = e.sku;
+        product = e.product;
+        stockWord = e.stockWord;
+        order = e.order;
+        status = e.status;
+        previousStatus = e.previousStatus;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case PRODUCT_ADDED:
+            case STOCK_CHANGED:
+                return type + " " + sku + " stock=" + getStock();
+            case ORDER_PLACED:
+                return type + " " + getOrderId() + " " + order.getCustomerUsername() + " total=" + order.total();
+            default:
+                return type + " " + getOrderId() + " " + previousStatus + "->" + status;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.company.ims;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Product, stock and order changes from one Store, in a preallocated ring of events numbered from 0. Writers claim
+// sequence numbers with one atomic add per mutation and fill the slots in place, so publishing allocates nothing and
+// never waits for a subscriber. Each subscriber reads on its own thread at its own pace, from any sequence still in
+// the ring; one that falls more than the capacity behind is told which events it lost and skips past them.
+public final class StoreEventBus implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final long BUSY = Long.MIN_VALUE;
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+    private static final int READ = 0;
+    private static final int NOT_YET = 1;
+    private static final int LAPPED = 2;
+
+    // How an idle subscriber waits for the next event: trading CPU for wake-up latency from BUSY_SPIN (a core kept
+    // busy) to BLOCKING (parked until a writer wakes it, which costs that writer an unpark).
+    public enum WaitStrategy {
+        BUSY_SPIN, YIELDING, SLEEPING, BLOCKING
+    }
+
+    private static final class Slot {
+        // The sequence whose event the slot holds, BUSY while a writer fills it.
+        volatile long sequence;
+        final StoreEvent event = new StoreEvent();
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    // The next sequence to hand out.
+    private final AtomicLong cursor = new AtomicLong();
+    // Subscribers parked by the BLOCKING strategy, so writers skip the wake-up scan when there are none.
+    private final AtomicInteger sleeping = new AtomicInteger();
+    private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+    private boolean closed;
+
+    public StoreEventBus(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two >= 2");
+        ring = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Slot();
+            ring[i].sequence = i - (long) capacity;
+        }
+        mask = capacity - 1;
+    }
+
+    // What a store publishes to before anyone asks for its events: every publish returns at once.
+    private StoreEventBus() {
+        ring = null;
+        mask = 0;
+    }
+
+    static StoreEventBus disabled() {
+        return new StoreEventBus();
+    }
+
+    boolean isEnabled() {
+        return ring != null;
+    }
+
+    public int getCapacity() { return ring.length; }
+
+    // The sequence the next event will get, which is also how many have been published.
+    public long getCursor() { return cursor.get(); }
+
+    // The oldest sequence a new subscriber can still start from.
+    public long getOldestSequence() {
+        return Math.max(0, cursor.get() - ring.length);
+    }
+
+    // Reads events from fromSequence onwards (getCursor() for only new ones) on a thread of its own until closed.
+    public synchronized Subscription subscribe(String name, StoreEventHandler handler, long fromSequence, WaitStrategy wait) {
+        if (name == null || name.isBlank()) throw new IllegalArgumentException("Name required");
+        if (handler == null) throw new IllegalArgumentException("Handler required");
+        if (wait == null) throw new IllegalArgumentException("Wait strategy required");
+        if (closed) throw new IllegalStateException("Event bus is closed");
+        if (fromSequence < 0 || fromSequence > cursor.get()) throw new IllegalArgumentException("No event " + fromSequence + " yet");
+        Subscription s = new Subscription(name.trim(), handler, fromSequence, wait);
+        Subscription[] subs = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        subs[subs.length - 1] = s;
+        subscriptions = subs;
+        s.thread.start();
+        return s;
+    }
+
+    public Subscription subscribe(String name, StoreEventHandler handler) {
+        return subscribe(name, handler, cursor.get(), WaitStrategy.SLEEPING);
+    }
+
+    private synchronized void remove(Subscription s) {
+        Subscription[] subs = subscriptions;
+        int i = Arrays.asList(subs).indexOf(s);
+        if (i < 0) return;
+        Subscription[] left = new Subscription[subs.length - 1];
+        System.arraycopy(subs, 0, left, 0, i);
+        System.arraycopy(subs, i + 1, left, i, left.length - i);
+        subscriptions = left;
+    }
+
+    // Stops every subscription; later events are still numbered but nobody reads them.
+    @Override
+    public void close() {
+        Subscription[] subs;
+        synchronized (this) {
+            closed = true;
+            subs = subscriptions;
+        }
+        for (Subscription s : subs) s.close();
+    }
+
+    void productAdded(Product p) {
+        if (ring == null) return;
+        long seq = cursor.getAndIncrement();
+        StoreEvent e = claim(seq);
+        e.type = StoreEvent.Type.PRODUCT_ADDED;
+        e.sku = p.getSku();
+        e.product = p;
+        e.stockWord = p.stockWord();
+        e.order = null;
+        e.status = null;
+        e.previousStatus = null;
+        publish(seq);
+        wake();
+    }
+
+    void stockChanged(List<Product> products, long[] words, int count) {
+        if (ring == null || count == 0) return;
+        long seq = cursor.getAndAdd(count);
+        for (int i = 0; i < count; i++) stock(seq + i, products.get(i).getSku(), words[i]);
+        wake();
+    }
+
+    // words are the stock words the order's lines left, in line order; null when the stock was taken elsewhere.
+    void orderPlaced(Order o, long[] words) {
+        if (ring == null) return;
+        int lines = words == null ? 0 : o.lineCount();
+        long seq = cursor.getAndAdd(1 + lines);
+        order(seq, StoreEvent.Type.ORDER_PLACED, o, OrderStatus.PLACED, null);
+        for (int i = 0; i < lines; i++) stock(seq + 1 + i, o.sku(i), words[i]);
+        wake();
+    }
+
+    void orderStatusChanged(Order o, OrderStatus before, List<String> restocked, long[] words) {
+        if (ring == null) return;
+        long seq = cursor.getAndAdd(1 + restocked.size());
+        order(seq, StoreEvent.Type.ORDER_STATUS_CHANGED, o, o.getStatus(), before);
+        for (int i = 0; i < restocked.size(); i++) stock(seq + 1 + i, restocked.get(i), words[i]);
+        wake();
+    }
+
+    private void stock(long seq, String sku, long word) {
+        StoreEvent e = claim(seq);
+        e.type = StoreEvent.Type.STOCK_CHANGED;
+        e.sku = sku;
+        e.product = null;
+        e.stockWord = word;
+        e.order = null;
+        e.status = null;
+        e.previousStatus = null;
+        publish(seq);
+    }
+
+    private void order(long seq, StoreEvent.Type type, Order o, OrderStatus status, OrderStatus before) {
+        StoreEvent e = claim(seq);
+        e.type = type;
+        e.sku = null;
+        e.product = null;
+        e.stockWord = 0;
+        e.order = o;
+        e.status = status;
+        e.previousStatus = before;
+        publish(seq);
+    }
+
+    // Waits only for the writer that had the slot one lap earlier to finish, never for a subscriber.
+    private StoreEvent claim(long seq) {
+        Slot slot = ring[(int) seq & mask];
+        for (int spins = 0; slot.sequence != seq - ring.length; spins++) {
+            if (spins < 100) Thread.onSpinWait();
+            else Thread.yield();
+        }
+        slot.sequence = BUSY;
+        // Keeps the field writes below from moving ahead of BUSY, which readers check for after copying.
+        VarHandle.storeStoreFence();
+        return slot.event;
+    }
+
+    private void publish(long seq) {
+        ring[(int) seq & mask].sequence = seq;
+    }
+
+    private void wake() {
+        if (sleeping.get() == 0) return;
+        for (Subscription s : subscriptions) {
+            if (s.parked) LockSupport.unpark(s.thread);
+        }
+    }
+
+    // Copies event seq into out; LAPPED if a writer has already reused its slot.
+    private int read(long seq, StoreEvent out) {
+        Slot slot = ring[(int) seq & mask];
+        long before = slot.sequence;
+        if (before == seq) {
+            out.copyFrom(slot.event);
+            VarHandle.acquireFence();
+            return slot.sequence == seq ? READ : LAPPED;
+        }
+        return seq < cursor.get() - ring.length ? LAPPED : NOT_YET;
+    }
+
+    private boolean published(long seq) {
+        return ring[(int) seq & mask].sequence == seq;
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final StoreEventHandler handler;
+        private final WaitStrategy wait;
+        private final Thread thread;
+        private final StoreEvent event = new StoreEvent();
+        // The next sequence this subscriber will read.
+        private volatile long sequence;
+        private volatile boolean running = true;
+        private volatile boolean parked;
+        private final AtomicLong lost = new AtomicLong();
+
+        private Subscription(String name, StoreEventHandler handler, long from, WaitStrategy wait) {
+            this.name = name;
+            this.handler = handler;
+            this.wait = wait;
+            this.sequence = from;
+            this.thread = new Thread(this::run, "ims-events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        public String getName() { return name; }
+        public long getSequence() { return sequence; }
+        // Events published but not read yet.
+        public long getLag() { return Math.max(0, cursor.get() - sequence); }
+        // Events overwritten before this subscriber could read them.
+        public long getLostEvents() { return lost.get(); }
+
+        private void run() {
+            long next = sequence;
+            int idle = 0;
+            while (running) {
+                long last = cursor.get() - 1;
+                long start = next;
+                while (next <= last) {
+                    int r = read(next, event);
+                    if (r == NOT_YET) break;
+                    if (r == LAPPED) {
+                        long oldest = Math.max(next + 1, cursor.get() - ring.length);
+                        lost.addAndGet(oldest - next);
+                        report(next, oldest);
+                        next = oldest;
+                        continue;
+                    }
+                    boolean endOfBatch = next == last || !published(next + 1);
+                    try {
+                        handler.onEvent(event, next, endOfBatch);
+                    } catch (RuntimeException ex) {
+                        Thread t = Thread.currentThread();
+                        t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+                    }
+                    next++;
+                }
+                if (next != start) {
+                    sequence = next;
+                    idle = 0;
+                } else {
+                    idle(idle++, next);
+                }
+            }
+        }
+
+        private void report(long from, long to) {
+            try {
+                handler.onOverrun(from, to);
+            } catch (RuntimeException ex) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+            }
+        }
+
+        private void idle(int attempt, long next) {
+            if (wait == WaitStrategy.BUSY_SPIN || attempt < 100) {
+                Thread.onSpinWait();
+            } else if (wait == WaitStrategy.YIELDING || attempt < 200) {
+                Thread.yield();
+            } else if (wait == WaitStrategy.SLEEPING) {
+                LockSupport.parkNanos(100_000);
+            } else {
+                parked = true;
+                sleeping.incrementAndGet();
+                // Re-checked after announcing, so a writer that published in between either sees us or is seen.
+                if (running && !published(next)) LockSupport.parkNanos(this, 10_000_000);
+                sleeping.decrementAndGet();
+                parked = false;
+            }
+        }
+
+        // Stops the subscriber's thread once the event it is handling, if any, is done.
+        @Override
+        public void close() {
+            running = false;
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            remove(this);
+        }
+    }
+}
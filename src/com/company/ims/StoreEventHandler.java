@@ -0,0 +1,10 @@
+package com.company.ims;
+
+public interface StoreEventHandler {
+    // endOfBatch is true on the last event available right now, so a handler can flush once per batch.
+    void onEvent(StoreEvent event, long sequence, boolean endOfBatch);
+
+    // The subscriber fell more than the bus's capacity behind and events [from, to) were overwritten before it read
+    // them; it carries on from to.
+    default void onOverrun(long from, long to) { }
+}
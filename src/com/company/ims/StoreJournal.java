@@ -0,0 +1,269 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+final class StoreJournal implements AutoCloseable {
+    private static final int PRODUCT_PUT = 1;
+    private static final int PRODUCT_REMOVED = 2;
+    private static final int STOCK = 3;
+    private static final int ORDER_PLACED = 4;
+    private static final int ORDER_STATUS = 5;
+    private static final int ORDERS_STATUS = 6;
+    private static final int ORDERS_PLACED = 7;
+
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private final Journal journal;
+    private final Path dir;
+    private final long checkpointBytes;
+    private final ThreadLocal<RecordOutput> scratch = ThreadLocal.withInitial(() -> new RecordOutput(256));
+    private final EpochTracker inFlight = new EpochTracker();
+    private final Object checkpointLock = new Object();
+    private final AtomicBoolean checkpointQueued = new AtomicBoolean();
+    private final ExecutorService checkpointer;
+    private volatile long lastCheckpointPosition;
+
+    private StoreJournal(Journal journal, Path dir, long checkpointBytes) {
+        this.journal = journal;
+        this.dir = dir;
+        this.checkpointBytes = checkpointBytes;
+        this.checkpointer = journal == null || checkpointBytes <= 0 ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ims-checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    static StoreJournal disabled() {
+        return new StoreJournal(null, null, 0);
+    }
+
+    // Loads the newest snapshot in dir, replays the journal segments written after it, and keeps appending.
+    // A checkpoint is started in the background whenever checkpointBytes of journal have piled up (0 = never).
+    static StoreJournal open(Path dir, FsyncPolicy policy, long syncIntervalMillis, long checkpointBytes, Store target)
+            throws IOException {
+        long firstSegment = StoreSnapshot.load(dir, target);
+        Journal j = Journal.open(dir, policy, syncIntervalMillis, firstSegment, in -> apply(in, target));
+        return new StoreJournal(j, dir, checkpointBytes);
+    }
+
+    // Brackets a mutation from its first in-memory change until its record is appended, so a checkpoint can wait
+    // for every change it might have observed to reach the journal.
+    long begin() {
+        return journal == null ? 0 : inFlight.enter();
+    }
+
+    void end(long token) {
+        if (journal != null) inFlight.exit(token);
+    }
+
+    // The snapshot is written after the journal switches to a new segment, so everything in older segments is
+    // already reflected in it and those segments can go once the snapshot is durable.
+    void checkpoint(Store store) throws IOException {
+        if (journal == null) throw new IllegalStateException("Store has no journal");
+        synchronized (checkpointLock) {
+            long segment = journal.rotate();
+            Path tmp = StoreSnapshot.write(store, dir, segment);
+            inFlight.awaitPrior();
+            journal.syncAll();
+            StoreSnapshot.publish(tmp, dir, segment);
+            journal.deleteSegmentsBefore(segment);
+        }
+    }
+
+    // Makes every change already visible in memory durable: waits out mutations still between begin and end, then
+    // fsyncs whatever has been appended, whatever the fsync policy.
+    void syncVisible() throws IOException {
+        if (journal == null) return;
+        synchronized (checkpointLock) {
+            inFlight.awaitPrior();
+            journal.syncAll();
+        }
+    }
+
+    private void maybeCheckpoint(long position, Store store) {
+        if (checkpointer == null || position - lastCheckpointPosition < checkpointBytes) return;
+        if (!checkpointQueued.compareAndSet(false, true)) return;
+        lastCheckpointPosition = position;
+        checkpointer.execute(() -> {
+            try {
+                checkpoint(store);
+            } catch (IOException | RuntimeException ex) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+            } finally {
+                checkpointQueued.set(false);
+            }
+        });
+    }
+
+    long productPut(Product p) {
+        if (journal == null) return 0;
+        RecordOutput out = scratch.get().reset().writeByte(PRODUCT_PUT)
+                .writeString(p.getSku())
+                .writeString(p.getName())
+                .writeVarLong(p.getPrice().minorUnits())
+                .writeVarLong(p.getLowStockThreshold())
+                .writeLong(p.stockWord());
+        return journal.append(out);
+    }
+
+    long productRemoved(String sku) {
+        if (journal == null) return 0;
+        return journal.append(scratch.get().reset().writeByte(PRODUCT_REMOVED).writeString(sku));
+    }
+
+    long stock(List<Product> products, long[] words, int count) {
+        if (journal == null || count == 0) return 0;
+        RecordOutput out = scratch.get().reset().writeByte(STOCK);
+        writeStock(out, products, words, count);
+        return journal.append(out);
+    }
+
+    private static void writeStock(RecordOutput out, List<Product> products, long[] words, int count) {
+        out.writeVarLong(count);
+        for (int i = 0; i < count; i++) out.writeString(products.get(i).getSku()).writeLong(words[i]);
+    }
+
+    long orderPlaced(Order o, long[] words) {
+        if (journal == null) return 0;
+        RecordOutput out = scratch.get().reset().writeByte(ORDER_PLACED);
+        writeOrder(out, o, words);
+        return journal.append(out);
+    }
+
+    // A batch of orders with the stock words the batch left on every SKU it touched, in one record: replay never
+    // sees the batch's stock taken without all of its orders.
+    long ordersPlaced(List<Order> orders, List<Product> products, long[] words) {
+        if (journal == null || (orders.isEmpty() && products.isEmpty())) return 0;
+        RecordOutput out = scratch.get().reset().writeByte(ORDERS_PLACED).writeVarLong(orders.size());
+        for (Order o : orders) writeOrder(out, o, null);
+        writeStock(out, products, words, products.size());
+        return journal.append(out);
+    }
+
+    // words, one per line, may be null when the stock goes in the record separately.
+    private static void writeOrder(RecordOutput out, Order o, long[] words) {
+        Instant createdAt = o.getCreatedAt();
+        out.writeVarLong(o.getId())
+                .writeString(o.getCustomerUsername())
+                .writeLong(createdAt.getEpochSecond())
+                .writeVarLong(createdAt.getNano())
+                .writeVarLong(o.lineCount());
+        for (int i = 0; i < o.lineCount(); i++) {
+            out.writeString(o.sku(i))
+                    .writeString(o.itemName(i))
+                    .writeVarLong(o.unitPriceMinor(i))
+                    .writeVarLong(o.quantity(i));
+            if (words != null) out.writeLong(words[i]);
+        }
+    }
+
+    long orderStatus(long orderId, OrderStatus status, List<String> restockedSkus, long[] words) {
+        if (journal == null) return 0;
+        RecordOutput out = scratch.get().reset().writeByte(ORDER_STATUS)
+                .writeVarLong(orderId)
+                .writeByte(status.ordinal())
+                .writeVarLong(restockedSkus.size());
+        for (int i = 0; i < restockedSkus.size(); i++) out.writeString(restockedSkus.get(i)).writeLong(words[i]);
+        return journal.append(out);
+    }
+
+    // Several orders moved to one status together with the stock their cancellations put back, in one record, so
+    // replay never sees the orders moved without their stock or the other way round.
+    long ordersStatus(long[] orderIds, int count, OrderStatus status, List<Product> products, long[] words) {
+        if (journal == null || count == 0) return 0;
+        RecordOutput out = scratch.get().reset().writeByte(ORDERS_STATUS)
+                .writeByte(status.ordinal())
+                .writeVarLong(count);
+        for (int i = 0; i < count; i++) out.writeVarLong(orderIds[i]);
+        writeStock(out, products, words, products.size());
+        return journal.append(out);
+    }
+
+    void sync(long position, Store store) {
+        if (journal == null || position <= 0) return;
+        journal.awaitDurable(position);
+        maybeCheckpoint(position, store);
+    }
+
+    private static void apply(RecordInput in, Store store) {
+        int type = in.readByte();
+        switch (type) {
+            case PRODUCT_PUT -> {
+                String sku = in.readString();
+                String name = in.readString();
+                Money price = Money.ofMinor(in.readVarLong());
+                int threshold = in.readVarInt();
+                store.restoreProduct(sku, name, price, threshold, in.readLong());
+            }
+            case PRODUCT_REMOVED -> store.restoreRemoval(in.readString());
+            case STOCK -> restoreStock(in, store);
+            case ORDER_PLACED -> restoreOrder(in, store, true);
+            case ORDERS_PLACED -> {
+                int n = in.readVarInt();
+                for (int i = 0; i < n; i++) restoreOrder(in, store, false);
+                restoreStock(in, store);
+            }
+            case ORDER_STATUS -> {
+                long id = in.readVarLong();
+                OrderStatus status = STATUSES[in.readByte()];
+                int n = in.readVarInt();
+                for (int i = 0; i < n; i++) store.restoreStock(in.readString(), in.readLong());
+                store.restoreStatus(id, status);
+            }
+            case ORDERS_STATUS -> {
+                OrderStatus status = STATUSES[in.readByte()];
+                long[] ids = new long[in.readVarInt()];
+                for (int i = 0; i < ids.length; i++) ids[i] = in.readVarLong();
+                restoreStock(in, store);
+                for (long id : ids) store.restoreStatus(id, status);
+            }
+            default -> throw new IllegalStateException("Unknown journal record type: " + type);
+        }
+    }
+
+    private static void restoreOrder(RecordInput in, Store store, boolean withWords) {
+        long id = in.readVarLong();
+        String user = in.readString();
+        Instant createdAt = Instant.ofEpochSecond(in.readLong(), in.readVarLong());
+        int n = in.readVarInt();
+        List<OrderItem> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String sku = in.readString();
+            String name = in.readString();
+            Money price = Money.ofMinor(in.readVarLong());
+            int qty = in.readVarInt();
+            items.add(new OrderItem(sku, name, price, qty));
+            if (withWords) store.restoreStock(sku, in.readLong());
+        }
+        store.restoreOrder(id, user, createdAt, items, OrderStatus.PLACED);
+    }
+
+    private static void restoreStock(RecordInput in, Store store) {
+        int n = in.readVarInt();
+        for (int i = 0; i < n; i++) store.restoreStock(in.readString(), in.readLong());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal == null) return;
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+    }
+}
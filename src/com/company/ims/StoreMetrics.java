@@ -0,0 +1,96 @@
+package com.company.ims;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-operation stats for a Store, readable over JMX (com.company.ims:type=Store,name=...,operation=...) or as text.
+// A batch call (placeOrders, transitionOrders, updateProducts) counts once as ok with its latency, and once rejected
+// for every cart, order or row in it that was turned down.
+public final class StoreMetrics {
+    final OperationStats placeOrder = new OperationStats("placeOrder", this);
+    final OperationStats placeOrders = new OperationStats("placeOrders", this);
+    final OperationStats cancelOrder = new OperationStats("cancelOrderAsCustomer", this);
+    final OperationStats updateOrderStatus = new OperationStats("updateOrderStatusAsAdmin", this);
+    final OperationStats transitionOrders = new OperationStats("transitionOrders", this);
+    final OperationStats updateProducts = new OperationStats("updateProducts", this);
+    // The shard calls a ShardedStore coordinator makes for carts spanning shards.
+    final OperationStats reserve = new OperationStats("reserve", this);
+    final OperationStats recordOrder = new OperationStats("recordOrder", this);
+    final OperationStats authenticate = new OperationStats("authenticate", this);
+    // Orders cancelled because payment did not arrive within the store's payment timeout.
+    final LongAdder expiredOrders = new LongAdder();
+
+    private final List<OperationStats> all = List.of(placeOrder, placeOrders, cancelOrder, updateOrderStatus,
+            transitionOrders, updateProducts, reserve, recordOrder, authenticate);
+    private final List<ObjectName> registered = new ArrayList<>();
+    private volatile boolean enabled = true;
+
+    StoreMetrics() { }
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public List<OperationStats> operations() {
+        return all;
+    }
+
+    public long getExpiredOrders() {
+        return expiredOrders.sum();
+    }
+
+    public synchronized void registerMBeans(String storeName) {
+        if (!registered.isEmpty()) throw new IllegalStateException("Metrics are already registered");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (OperationStats s : all) {
+                ObjectName name = new ObjectName("com.company.ims", new Hashtable<>(Map.of(
+                        "type", "Store", "name", ObjectName.quote(storeName), "operation", s.name())));
+                server.registerMBean(s, name);
+                registered.add(name);
+            }
+        } catch (InstanceAlreadyExistsException ex) {
+            unregisterMBeans();
+            throw new IllegalStateException("Another store is already registered as " + storeName, ex);
+        } catch (JMException ex) {
+            unregisterMBeans();
+            throw new IllegalStateException("Could not register store metrics", ex);
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException ignored) {
+            } catch (JMException ex) {
+                throw new IllegalStateException("Could not unregister " + name, ex);
+            }
+        }
+        registered.clear();
+    }
+
+    // One line per operation; latencies are for successful calls only.
+    public String dump() {
+        StringBuilder sb = new StringBuilder(512);
+        for (OperationStats s : all) {
+            sb.append(String.format("%-26s ok=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus rejected=%d",
+                    s.name(), s.getSucceeded(), s.getP50Micros(), s.getP99Micros(), s.getP999Micros(),
+                    s.getMaxMicros(), s.getRejected()));
+            Map<String, Long> reasons = s.getRejectionsByReason();
+            if (!reasons.isEmpty()) sb.append(' ').append(reasons);
+            sb.append('\n');
+        }
+        sb.append(String.format("%-26s %d%n", "expiredUnpaidOrders", expiredOrders.sum()));
+        return sb.toString();
+    }
+}
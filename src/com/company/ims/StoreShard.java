@@ -0,0 +1,48 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// One partition of a ShardedStore: the products whose SKUs hash to it, and the orders it recorded, numbered from its
+// own id range. The coordinator only talks to shards through this, so a shard could live in another process.
+public interface StoreShard extends AutoCloseable {
+    Optional<Product> findProduct(String sku);
+
+    Collection<Product> listProducts();
+
+    void addProduct(Product p);
+
+    int restock(String sku, int qty);
+
+    // A cart whose SKUs all live on this shard.
+    Order placeOrder(String username, Map<String, Integer> cart);
+
+    // Takes the stock for every line or for none (throwing IllegalArgumentException), and holds it until commit or
+    // abort. Lines are already normalized: trimmed SKUs of this shard, positive quantities.
+    ShardReservation prepare(Map<String, Integer> lines);
+
+    void commit(ShardReservation reservation);
+
+    // Returns the held stock; aborting a reservation that is no longer held does nothing.
+    void abort(ShardReservation reservation);
+
+    // Records one order made of the items held by these reservations, from this and other shards.
+    Order recordOrder(String username, List<ShardReservation> reservations);
+
+    // Returns stock for lines of a cancelled order that another shard recorded.
+    void release(Map<String, Integer> lines);
+
+    Optional<Order> findOrder(long id);
+
+    List<Order> listOrdersForUser(String username);
+
+    void cancelOrderAsCustomer(String username, long orderId);
+
+    void updateOrderStatusAsAdmin(long orderId, OrderStatus newStatus);
+
+    @Override
+    void close() throws IOException;
+}
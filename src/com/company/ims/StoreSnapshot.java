@@ -0,0 +1,233 @@
+package com.company.ims;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// Point-in-time image of a Store. The file is named after the first journal segment that still has to be replayed
+// on top of it. Layout: header (magic, version, segment, nextOrderId), tagged product and order records, then an
+// END tag with both record counts and a CRC32C over everything before it.
+final class StoreSnapshot {
+    private static final int MAGIC = 0x494D5353; // "IMSS"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 24;
+    private static final int END = 0;
+    private static final int PRODUCT = 1;
+    private static final int ORDER = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long MAP_WINDOW = 1L << 30;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private StoreSnapshot() { }
+
+    // Streams the store to a temp file while writers keep going; the image may include changes made during the
+    // write, which is fine because every journal record replays idempotently on top of it.
+    static Path write(Store store, Path dir, long segment) throws IOException {
+        Path tmp = dir.resolve(name(segment) + TEMP_SUFFIX);
+        CRC32C crc = new CRC32C();
+        RecordOutput rec = new RecordOutput(512);
+        ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            rec.reset().writeInt(MAGIC).writeInt(FORMAT_VERSION).writeLong(segment).writeLong(store.peekNextOrderId());
+            emit(ch, buf, rec, crc);
+
+            long products = 0;
+            for (Product p : store.products()) {
+                rec.reset().writeByte(PRODUCT)
+                        .writeString(p.getSku())
+                        .writeString(p.getName())
+                        .writeVarLong(p.getPrice().minorUnits())
+                        .writeVarLong(p.getLowStockThreshold())
+                        .writeLong(p.stockWord());
+                emit(ch, buf, rec, crc);
+                products++;
+            }
+
+            long orders = 0;
+            for (Order o : store.orders()) {
+                Instant createdAt = o.getCreatedAt();
+                rec.reset().writeByte(ORDER)
+                        .writeVarLong(o.getId())
+                        .writeString(o.getCustomerUsername())
+                        .writeLong(createdAt.getEpochSecond())
+                        .writeVarLong(createdAt.getNano())
+                        .writeByte(o.getStatus().ordinal())
+                        .writeVarLong(o.lineCount());
+                for (int i = 0; i < o.lineCount(); i++) {
+                    rec.writeString(o.sku(i))
+                            .writeString(o.itemName(i))
+                            .writeVarLong(o.unitPriceMinor(i))
+                            .writeVarLong(o.quantity(i));
+                }
+                emit(ch, buf, rec, crc);
+                orders++;
+            }
+
+            rec.reset().writeByte(END).writeVarLong(products).writeVarLong(orders);
+            emit(ch, buf, rec, crc);
+            buf.putInt((int) crc.getValue());
+            drain(ch, buf);
+            ch.force(true);
+        }
+        return tmp;
+    }
+
+    // Makes a finished temp image the current snapshot and drops the older ones.
+    static void publish(Path tmp, Path dir, long segment) throws IOException {
+        Path target = dir.resolve(name(segment) + SUFFIX);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(dir);
+        for (long s : snapshots(dir)) {
+            if (s < segment) Files.deleteIfExists(dir.resolve(name(s) + SUFFIX));
+        }
+    }
+
+    // Loads the newest snapshot into the store and returns the first journal segment to replay after it.
+    static long load(Path dir, Store store) throws IOException {
+        if (!Files.isDirectory(dir)) return 1;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + TEMP_SUFFIX)) {
+            for (Path p : ds) Files.deleteIfExists(p);
+        }
+
+        List<Long> found = snapshots(dir);
+        if (found.isEmpty()) return 1;
+        long segment = found.get(found.size() - 1);
+        read(dir.resolve(name(segment) + SUFFIX), segment, store);
+        return segment;
+    }
+
+    private static void read(Path file, long segment, Store store) throws IOException {
+        try {
+            readMapped(file, segment, store);
+        } catch (BufferUnderflowException | IllegalStateException | ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Corrupt snapshot: " + file, ex);
+        }
+    }
+
+    private static void readMapped(Path file, long segment, Store store) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES + 4) throw new IOException("Truncated snapshot " + file);
+            CRC32C crc = new CRC32C();
+
+            long base = 0;
+            MappedByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size - 4, MAP_WINDOW));
+            RecordInput in = new RecordInput(window);
+            if (in.readInt() != MAGIC) throw new IOException("Not a store snapshot: " + file);
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported snapshot version: " + version);
+            if (in.readLong() != segment) throw new IOException("Snapshot segment mismatch: " + file);
+            store.restoreNextOrderId(in.readLong());
+
+            long products = 0;
+            long orders = 0;
+            while (true) {
+                if (in.remaining() < MAX_RECORD_BYTES && base + window.limit() < size - 4) {
+                    crc.update(window.duplicate().flip());
+                    base += window.position();
+                    window = ch.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - 4 - base, MAP_WINDOW));
+                    in = new RecordInput(window);
+                }
+
+                int tag = in.readByte();
+                if (tag == END) {
+                    if (in.readVarLong() != products || in.readVarLong() != orders)
+                        throw new IOException("Snapshot record counts do not match: " + file);
+                    break;
+                } else if (tag == PRODUCT) {
+                    String sku = in.readString();
+                    String name = in.readString();
+                    Money price = Money.ofMinor(in.readVarLong());
+                    int threshold = in.readVarInt();
+                    store.restoreProduct(sku, name, price, threshold, in.readLong());
+                    products++;
+                } else if (tag == ORDER) {
+                    long id = in.readVarLong();
+                    String user = in.readString();
+                    Instant createdAt = Instant.ofEpochSecond(in.readLong(), in.readVarLong());
+                    OrderStatus status = STATUSES[in.readByte()];
+                    int n = in.readVarInt();
+                    List<OrderItem> items = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        String sku = in.readString();
+                        String name = in.readString();
+                        Money price = Money.ofMinor(in.readVarLong());
+                        items.add(new OrderItem(sku, name, price, in.readVarInt()));
+                    }
+                    store.restoreOrder(id, user, createdAt, items, status);
+                    orders++;
+                } else {
+                    throw new IOException("Unknown snapshot record tag " + tag + " in " + file);
+                }
+            }
+
+            crc.update(window.duplicate().flip());
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            while (trailer.hasRemaining() && ch.read(trailer, base + window.position() + trailer.position()) > 0) { }
+            if (trailer.hasRemaining() || trailer.getInt(0) != (int) crc.getValue())
+                throw new IOException("Snapshot checksum mismatch: " + file);
+        }
+    }
+
+    private static List<Long> snapshots(Path dir) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String n = p.getFileName().toString();
+                try {
+                    out.add(Long.parseLong(n.substring(PREFIX.length(), n.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        out.sort(null);
+        return out;
+    }
+
+    private static String name(long segment) {
+        return String.format("%s%016d", PREFIX, segment);
+    }
+
+    private static void emit(FileChannel ch, ByteBuffer buf, RecordOutput rec, CRC32C crc) throws IOException {
+        rec.updateChecksum(crc);
+        if (buf.remaining() < rec.length()) drain(ch, buf);
+        if (buf.remaining() < rec.length()) {
+            ByteBuffer big = ByteBuffer.allocate(rec.length());
+            rec.copyTo(big);
+            big.flip();
+            while (big.hasRemaining()) ch.write(big);
+            return;
+        }
+        rec.copyTo(buf);
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    private static void syncDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+            // Not every platform lets a directory be opened for fsync; the rename is still atomic there.
+        }
+    }
+}
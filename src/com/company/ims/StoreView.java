@@ -0,0 +1,68 @@
+package com.company.ims;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// A store as it stood at one moment: every placement, cancellation, status change, restock and catalog edit either
+// shows in full or not at all, however long the view is kept open. Products and orders come back as detached copies.
+// The store keeps the history an open view needs, so close it when the report is done.
+public class StoreView implements AutoCloseable {
+    private final Store store;
+    private final long version;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    StoreView(Store store, long version) {
+        this.store = store;
+        this.version = version;
+    }
+
+    public long getVersion() { return version; }
+
+    // The whole catalog in SKU order.
+    public List<Product> listProducts() {
+        return streamProducts().collect(Collectors.toList());
+    }
+
+    public Stream<Product> streamProducts() {
+        checkOpen();
+        return store.productsAsOf(version);
+    }
+
+    public Optional<Product> findProduct(String sku) {
+        checkOpen();
+        if (sku == null) return Optional.empty();
+        return Optional.ofNullable(store.productAsOf(sku.trim(), version));
+    }
+
+    public List<Product> lowStockProducts() {
+        List<Product> low = new ArrayList<>();
+        for (Product p : listProducts()) {
+            if (p.isLowStock()) low.add(p);
+        }
+        return low;
+    }
+
+    // Orders in id order after afterOrderId (0 for all), archived ones included.
+    public Stream<Order> streamOrders(long afterOrderId) {
+        checkOpen();
+        return store.streamOrders(afterOrderId).map(o -> o.asOf(version)).filter(Objects::nonNull);
+    }
+
+    public List<Order> listAllOrders() {
+        return streamOrders(0).collect(Collectors.toList());
+    }
+
+    private void checkOpen() {
+        if (closed.get()) throw new IllegalStateException("View is closed");
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) store.closeView(version);
+    }
+}
@@ -0,0 +1,162 @@
+package com.company.ims;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Hashed timing wheel of (id, deadline) pairs fired on one background thread. An entry costs two longs in its
+// bucket's arrays and scheduling is an append under that bucket's lock, so millions of pending deadlines are cheap.
+// Entries cannot be cancelled: the callback is expected to re-check whatever the deadline was guarding.
+final class TimingWheel implements AutoCloseable {
+    interface Expiry {
+        // ids[0..count) are due; called on the wheel thread.
+        void expire(long[] ids, int count);
+    }
+
+    private static final class Bucket {
+        long[] ids = new long[16];
+        long[] deadlines = new long[16];
+        int size;
+        // Last tick this bucket was swept for; an entry due at or before it goes to the overdue bucket instead.
+        long sweptTick = -1;
+
+        void add(long id, long deadline) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                deadlines = Arrays.copyOf(deadlines, size * 2);
+            }
+            ids[size] = id;
+            deadlines[size] = deadline;
+            size++;
+        }
+    }
+
+    // Longest a failed expiry waits before it is tried again.
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Bucket overdue = new Bucket();
+    private final Expiry expiry;
+    private final Thread thread;
+    private volatile boolean closed;
+    private long[] due = new long[256];
+    // Wheel thread only: how long the last failed expiry was put off, 0 once one succeeds.
+    private long retryMillis;
+
+    TimingWheel(long tickMillis, int slots, Expiry expiry, String threadName) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("Tick must be > 0");
+        if (slots <= 0 || Integer.bitCount(slots) != 1) throw new IllegalArgumentException("Slots must be a power of two");
+        this.tickMillis = tickMillis;
+        this.startMillis = System.currentTimeMillis();
+        this.buckets = new Bucket[slots];
+        for (int i = 0; i < slots; i++) buckets[i] = new Bucket();
+        this.mask = slots - 1;
+        this.expiry = expiry;
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Deadlines are wall-clock epoch millis; one already in the past fires on the next tick.
+    void schedule(long id, long deadlineMillis) {
+        long tick = Math.max(0, Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis));
+        Bucket b = buckets[(int) (tick & mask)];
+        synchronized (b) {
+            if (tick > b.sweptTick) {
+                b.add(id, deadlineMillis);
+                return;
+            }
+        }
+        synchronized (overdue) {
+            overdue.add(id, deadlineMillis);
+        }
+    }
+
+    int pending() {
+        int n = 0;
+        for (Bucket b : buckets) {
+            synchronized (b) {
+                n += b.size;
+            }
+        }
+        synchronized (overdue) {
+            return n + overdue.size;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() == thread) return;
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long tick = -1;
+        while (!closed) {
+            long now = System.currentTimeMillis();
+            long target = (now - startMillis) / tickMillis;
+            if (target <= tick) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(startMillis + (tick + 1) * tickMillis - now));
+                continue;
+            }
+            // After a long stall every bucket has been passed at least once; one sweep of each is enough.
+            if (target - tick > buckets.length) tick = target - buckets.length;
+            while (tick < target && !closed) {
+                tick++;
+                sweep(buckets[(int) (tick & mask)], tick, now);
+            }
+            sweep(overdue, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+    }
+
+    // Moves every entry due by now out of b (keeping the rest in place) and hands them to the callback.
+    private void sweep(Bucket b, long tick, long now) {
+        int n = 0;
+        synchronized (b) {
+            if (tick != Long.MIN_VALUE) b.sweptTick = tick;
+            int kept = 0;
+            for (int i = 0; i < b.size; i++) {
+                if (b.deadlines[i] <= now) {
+                    if (n == due.length) due = Arrays.copyOf(due, n * 2);
+                    due[n++] = b.ids[i];
+                } else {
+                    b.ids[kept] = b.ids[i];
+                    b.deadlines[kept] = b.deadlines[i];
+                    kept++;
+                }
+            }
+            b.size = kept;
+            if (b.ids.length > 64 && kept < b.ids.length / 4) {
+                int cap = Math.max(16, Integer.highestOneBit(Math.max(1, kept)) << 1);
+                b.ids = Arrays.copyOf(b.ids, cap);
+                b.deadlines = Arrays.copyOf(b.deadlines, cap);
+            }
+        }
+        if (n == 0) return;
+        try {
+            expiry.expire(due, n);
+            retryMillis = 0;
+        } catch (RuntimeException ex) {
+            // Put off rather than dropped, twice as long after each failure in a row, so a failure that persists (a
+            // broken journal, say) is neither retried every tick nor reported every tick: only the first is reported.
+            boolean first = retryMillis == 0;
+            retryMillis = first ? tickMillis : Math.min(retryMillis * 2, Math.max(MAX_RETRY_MILLIS, tickMillis));
+            long retryAt = System.currentTimeMillis() + retryMillis;
+            for (int i = 0; i < n; i++) schedule(due[i], retryAt);
+            if (first) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+            }
+        }
+        if (due.length > 4096 && n < due.length / 4) due = new long[256];
+    }
+}
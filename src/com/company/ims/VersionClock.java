@@ -0,0 +1,65 @@
+package com.company.ims;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Numbers a store's mutations for snapshot views. A mutation runs between enter and exit and takes its version with
+// next() just before its first change; everything it changes is tagged with that version. open() returns a view
+// version V such that every mutation numbered <= V has finished and every later one is told apart by its tags. It
+// waits only for mutations already in flight and never holds up new ones.
+final class VersionClock {
+    private final EpochTracker inFlight = new EpochTracker();
+    private final AtomicLong clock = new AtomicLong();
+    private final Object viewLock = new Object();
+    // Open view versions and how many views hold each; 0 while a view is being opened.
+    private final TreeMap<Long, Integer> open = new TreeMap<>();
+    private volatile long floor = Long.MAX_VALUE;
+
+    long enter() {
+        return inFlight.enter();
+    }
+
+    void exit(long token) {
+        inFlight.exit(token);
+    }
+
+    long next() {
+        return clock.incrementAndGet();
+    }
+
+    // Every open view sees all versions up to here, so history at or below it can be dropped; Long.MAX_VALUE when
+    // no view is open. Read it after taking a version.
+    long floor() {
+        return floor;
+    }
+
+    long open() {
+        synchronized (viewLock) {
+            // Writers already past their floor read may prune anything they have seen; the first wait lets them
+            // finish, and everyone after keeps all history until the view's version is known.
+            hold(0L);
+            inFlight.awaitPrior();
+            long version = clock.get();
+            inFlight.awaitPrior();
+            release(0L);
+            hold(version);
+            return version;
+        }
+    }
+
+    void close(long version) {
+        synchronized (viewLock) {
+            release(version);
+        }
+    }
+
+    private void hold(long version) {
+        open.merge(version, 1, Integer::sum);
+        floor = open.firstKey();
+    }
+
+    private void release(long version) {
+        open.computeIfPresent(version, (v, n) -> n == 1 ? null : n - 1);
+        floor = open.isEmpty() ? Long.MAX_VALUE : open.firstKey();
+    }
+}